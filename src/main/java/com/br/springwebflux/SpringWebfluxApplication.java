@@ -3,18 +3,11 @@ package com.br.springwebflux;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
-import reactor.blockhound.BlockHound;
 
 @SpringBootApplication
 public class SpringWebfluxApplication {
 
-//    static {
-//        BlockHound.install(
-//                builder -> builder.allowBlockingCallsInside("java.util.UUID", "randomUUID")
-//                        .allowBlockingCallsInside("java.io.FilterInputStream", "read")
-//                        .allowBlockingCallsInside("java.io.InputStream", "readNBytes")
-//        );
-//    }
+    //o BlockHound é instalado pelo config.BlockHoundInstaller conforme blockhound.* (mode, sample-rate, allowed)
 
     public static void main(String[] args) {
 
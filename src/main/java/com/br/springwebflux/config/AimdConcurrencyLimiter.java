@@ -0,0 +1,68 @@
+package com.br.springwebflux.config;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//limite de requisições simultâneas que se ajusta sozinho (additive increase, multiplicative decrease):
+//cada resposta rápida com o limite em uso sobe o limite em 1; uma resposta lenta ou um 5xx multiplica por backoffRatio
+//as requisições que já estavam em andamento quando o limite caiu não derrubam ele de novo,
+//senão uma única rajada lenta levaria o limite direto para o mínimo
+public class AimdConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    private long lastDecreaseNanos;
+
+    public AimdConcurrencyLimiter(ConcurrencyLimitProperties.Limit properties, long nowNanos) {
+        this.minLimit = Math.max(1, properties.getMinLimit());
+        this.maxLimit = Math.max(minLimit, properties.getMaxLimit());
+        this.latencyThresholdNanos = properties.getLatencyThreshold().toNanos();
+        this.backoffRatio = properties.getBackoffRatio();
+        this.limit = Math.min(maxLimit, Math.max(minLimit, properties.getInitialLimit()));
+        this.lastDecreaseNanos = nowNanos;
+    }
+
+    //sem fila: ou entra agora ou é rejeitada
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    //chamado antes do release; startNanos/endNanos de System.nanoTime()
+    //overloaded: a requisição falhou por sobrecarga (5xx, timeout do pool)
+    public synchronized void onSample(long startNanos, long endNanos, boolean overloaded) {
+        if (overloaded || endNanos - startNanos > latencyThresholdNanos) {
+            if (startNanos - lastDecreaseNanos >= 0) {
+                limit = Math.max(minLimit, (int) (limit * backoffRatio));
+                lastDecreaseNanos = endNanos;
+            }
+            return;
+        }
+        //só cresce se o limite atual está sendo usado; com pouco tráfego ele subiria sem medir nada
+        if (inFlight.get() * 2 >= limit && limit < maxLimit) {
+            limit++;
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,53 @@
+package com.br.springwebflux.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "auth")
+public class AuthProperties {
+
+    private UserCache userCache = new UserCache();
+    private CredentialCache credentialCache = new CredentialCache();
+    private Hashing hashing = new Hashing();
+    private Token token = new Token();
+
+    @Data
+    public static class UserCache {
+        private boolean enabled = true;
+        private long maxSize = 10_000;
+        //tempo máximo que uma troca de senha/permissão feita fora da aplicação leva para valer
+        private Duration ttl = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class CredentialCache {
+        private boolean enabled = true;
+        private long maxSize = 10_000;
+        //curto de propósito: é o tempo que uma senha já verificada dispensa o bcrypt
+        private Duration ttl = Duration.ofMinutes(2);
+    }
+
+    @Data
+    public static class Hashing {
+        //bcrypt é CPU pura, mais threads que núcleos só aumenta a fila
+        private int threads = Runtime.getRuntime().availableProcessors();
+        //acima disso a requisição recebe 503 em vez de esperar na fila
+        private int queueCapacity = 100;
+    }
+
+    @Data
+    public static class Token {
+        //desligado: Basic + form login como antes; ligado: login em POST /auth/token e Bearer no resto
+        private boolean enabled = false;
+        //HMAC-SHA256, precisa ser o mesmo em todas as instâncias e ter pelo menos 32 bytes
+        private String secret;
+        private String issuer = "spring-webflux";
+        //não há revogação, o token vale até expirar
+        private Duration ttl = Duration.ofMinutes(15);
+    }
+}
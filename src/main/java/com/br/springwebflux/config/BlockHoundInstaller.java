@@ -0,0 +1,79 @@
+package com.br.springwebflux.config;
+
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.boot.logging.DeferredLog;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.core.env.MapPropertySource;
+import reactor.blockhound.BlockHound;
+import reactor.blockhound.integration.BlockHoundIntegration;
+
+import java.util.Collections;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//instala o BlockHound conforme blockhound.* logo depois do application.yml ser lido,
+//antes de qualquer thread do Reactor/Netty ser criada
+//roda imediatamente antes do agente de debug do Reactor (reactor-tools, ordem LOWEST_PRECEDENCE):
+//no Java 8 os dois agentes não conseguem se anexar à mesma JVM, então com o BlockHound ligado
+//o agente de debug é desligado
+//as métricas vão para o Metrics.globalRegistry, ao qual o Spring Boot liga o registry da aplicação
+public class BlockHoundInstaller implements EnvironmentPostProcessor, ApplicationListener<ApplicationPreparedEvent>, Ordered {
+
+    private static final String DEBUG_AGENT_PROPERTY = "spring.reactor.debug-agent.enabled";
+
+    //o agente só pode ser instalado uma vez por JVM
+    private static final AtomicBoolean INSTALLED = new AtomicBoolean();
+
+    //o sistema de log ainda não foi inicializado quando o Environment é preparado
+    private static final DeferredLog log = new DeferredLog();
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE - 1;
+    }
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        BlockHoundProperties properties = Binder.get(environment)
+                .bind(BlockHoundProperties.PREFIX, BlockHoundProperties.class)
+                .orElseGet(BlockHoundProperties::new);
+        if (properties.getMode() == BlockHoundProperties.Mode.OFF) {
+            return;
+        }
+        environment.getPropertySources().addFirst(new MapPropertySource("blockhound",
+                Collections.singletonMap(DEBUG_AGENT_PROPERTY, "false")));
+        if (INSTALLED.compareAndSet(false, true)) {
+            install(properties);
+            log.info("BlockHound installed in " + properties.getMode() + " mode with sample rate "
+                    + properties.getSampleRate() + ", Reactor debug agent disabled");
+        }
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationPreparedEvent event) {
+        log.replayTo(BlockHoundInstaller.class);
+    }
+
+    private static void install(BlockHoundProperties properties) {
+        BlockHound.Builder builder = BlockHound.builder();
+        //mesmas integrações que o BlockHound.install() carrega (Reactor, etc.)
+        for (BlockHoundIntegration integration : ServiceLoader.load(BlockHoundIntegration.class)) {
+            builder.with(integration);
+        }
+        for (String allowed : properties.getAllowed()) {
+            String[] classAndMethod = allowed.split("#");
+            if (classAndMethod.length != 2) {
+                throw new IllegalArgumentException("blockhound.allowed entries must be class#method: " + allowed);
+            }
+            builder.allowBlockingCallsInside(classAndMethod[0].trim(), classAndMethod[1].trim());
+        }
+        builder.blockingMethodCallback(new BlockingCallReporter(properties.getMode(), properties.getSampleRate(), Metrics.globalRegistry));
+        builder.install();
+    }
+}
@@ -0,0 +1,30 @@
+package com.br.springwebflux.config;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//lidas direto do Environment pelo BlockHoundInstaller, antes do contexto existir
+@Data
+public class BlockHoundProperties {
+
+    public static final String PREFIX = "blockhound";
+
+    private Mode mode = Mode.OFF;
+    //fração das chamadas bloqueantes detectadas que é contada/logada, entre 0 e 1
+    private double sampleRate = 1.0;
+    //chamadas bloqueantes aceitas, no formato classe#método
+    private List<String> allowed = new ArrayList<>();
+
+    public enum Mode {
+        //não instala o agente, sem custo nenhum
+        OFF,
+        //conta por local de chamada e loga a primeira ocorrência de cada local com o stack trace
+        LOG,
+        //só conta
+        COUNT,
+        //conta e lança BlockingOperationError, como nos testes; não usar em produção
+        STRICT
+    }
+}
@@ -0,0 +1,86 @@
+package com.br.springwebflux.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.blockhound.BlockingMethod;
+import reactor.blockhound.BlockingOperationError;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+//callback do BlockHound: em vez de derrubar a requisição, conta a chamada bloqueante
+//em blockhound.blocking.calls{method, site}, onde site é o primeiro frame fora da JDK
+@Slf4j
+public class BlockingCallReporter implements Consumer<BlockingMethod> {
+
+    static final String METRIC_NAME = "blockhound.blocking.calls";
+
+    private static final String[] SKIPPED_PACKAGES = {
+            "java.", "javax.", "sun.", "jdk.", "com.sun.", "reactor.blockhound."
+    };
+
+    private final BlockHoundProperties.Mode mode;
+    private final double sampleRate;
+    private final MeterRegistry meterRegistry;
+    private final Set<String> loggedSites = ConcurrentHashMap.newKeySet();
+    //logar pode bloquear (escrita no console) e chamar o callback de novo na mesma thread
+    private final ThreadLocal<Boolean> reporting = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    public BlockingCallReporter(BlockHoundProperties.Mode mode, double sampleRate, MeterRegistry meterRegistry) {
+        this.mode = mode;
+        this.sampleRate = sampleRate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void accept(BlockingMethod method) {
+        if (reporting.get()) {
+            return;
+        }
+        if (mode != BlockHoundProperties.Mode.STRICT && sampleRate < 1.0
+                && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        reporting.set(Boolean.TRUE);
+        try {
+            report(method);
+        } finally {
+            reporting.set(Boolean.FALSE);
+        }
+        if (mode == BlockHoundProperties.Mode.STRICT) {
+            throw new BlockingOperationError(method);
+        }
+    }
+
+    private void report(BlockingMethod method) {
+        String site = callSite();
+        meterRegistry.counter(METRIC_NAME, "method", method.toString(), "site", site).increment();
+        if (mode == BlockHoundProperties.Mode.LOG && loggedSites.add(method + " " + site)) {
+            log.warn("Blocking call {} at {} on thread {}", method, site, Thread.currentThread().getName(),
+                    new BlockingOperationError(method));
+        }
+    }
+
+    private static String callSite() {
+        for (StackTraceElement frame : Thread.currentThread().getStackTrace()) {
+            if (!isSkipped(frame.getClassName())) {
+                return frame.getClassName() + "." + frame.getMethodName();
+            }
+        }
+        return "unknown";
+    }
+
+    private static boolean isSkipped(String className) {
+        if (className.equals(BlockingCallReporter.class.getName())) {
+            return true;
+        }
+        for (String skipped : SKIPPED_PACKAGES) {
+            if (className.startsWith(skipped)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,56 @@
+package com.br.springwebflux.config;
+
+import org.springframework.security.authentication.AccountStatusUserDetailsChecker;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsChecker;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+//igual ao UserDetailsRepositoryReactiveAuthenticationManager, mas só manda para o pool do bcrypt
+//quem não está no cache de credenciais: senhas erradas enchendo a fila não derrubam quem já foi verificado
+public class CacheFirstAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final ReactiveUserDetailsService userDetailsService;
+    private final PasswordEncoder passwordEncoder;
+    private final Scheduler scheduler;
+    private final UserDetailsChecker userDetailsChecker = new AccountStatusUserDetailsChecker();
+
+    public CacheFirstAuthenticationManager(ReactiveUserDetailsService userDetailsService,
+                                           PasswordEncoder passwordEncoder,
+                                           Scheduler scheduler) {
+        this.userDetailsService = userDetailsService;
+        this.passwordEncoder = passwordEncoder;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        String presentedPassword = (String) authentication.getCredentials();
+        return userDetailsService.findByUsername(authentication.getName())
+                .flatMap(user -> verify(presentedPassword, user))
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new BadCredentialsException("Invalid Credentials"))))
+                .doOnNext(userDetailsChecker::check)
+                .map(user -> new UsernamePasswordAuthenticationToken(user, user.getPassword(), user.getAuthorities()));
+    }
+
+    private Mono<UserDetails> verify(String presentedPassword, UserDetails user) {
+        if (passwordEncoder instanceof CachingPasswordEncoder) {
+            CachingPasswordEncoder cachingPasswordEncoder = (CachingPasswordEncoder) passwordEncoder;
+            if (cachingPasswordEncoder.cachedMatch(presentedPassword, user.getPassword())) {
+                return Mono.just(user);
+            }
+            return Mono.just(user)
+                    .publishOn(scheduler)
+                    .filter(u -> cachingPasswordEncoder.slowMatch(presentedPassword, u.getPassword()));
+        }
+        return Mono.just(user)
+                .publishOn(scheduler)
+                .filter(u -> passwordEncoder.matches(presentedPassword, u.getPassword()));
+    }
+}
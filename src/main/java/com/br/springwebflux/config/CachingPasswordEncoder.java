@@ -0,0 +1,101 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.service.UserCredentialsChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
+
+//lembra por pouco tempo as senhas que já passaram pelo bcrypt, assim as requisições
+//seguintes do mesmo cliente não pagam o bcrypt de novo
+//a chave é um HMAC (segredo aleatório do processo) do hash guardado + senha digitada:
+//a senha nunca fica em memória e, como o hash muda quando a senha muda, a entrada antiga não casa mais
+//só acertos entram no cache, senhas erradas sempre passam pelo bcrypt
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final PasswordEncoder delegate;
+    private final SecretKeySpec secret;
+    private final ThreadLocal<Mac> macs;
+    private final Cache<ByteBuffer, Boolean> verified;
+
+    public CachingPasswordEncoder(PasswordEncoder delegate, long maxSize, Duration ttl, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.secret = new SecretKeySpec(key, HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "credentials");
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return cachedMatch(rawPassword, encodedPassword) || slowMatch(rawPassword, encodedPassword);
+    }
+
+    //só HMAC + consulta no cache, barato o bastante para rodar no event loop
+    public boolean cachedMatch(CharSequence rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return false;
+        }
+        return verified.getIfPresent(keyOf(rawPassword, encodedPassword)) != null;
+    }
+
+    //passa pelo bcrypt e guarda o acerto; deve rodar fora do event loop
+    public boolean slowMatch(CharSequence rawPassword, String encodedPassword) {
+        boolean matches = delegate.matches(rawPassword, encodedPassword);
+        if (matches && rawPassword != null && encodedPassword != null) {
+            verified.put(keyOf(rawPassword, encodedPassword), Boolean.TRUE);
+        }
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @EventListener
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        verified.invalidateAll();
+    }
+
+    private ByteBuffer keyOf(CharSequence rawPassword, String encodedPassword) {
+        Mac mac = macs.get();
+        mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(mac.doFinal());
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("could not create " + HMAC_ALGORITHM, e);
+        }
+    }
+}
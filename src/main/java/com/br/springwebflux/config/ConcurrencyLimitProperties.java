@@ -0,0 +1,42 @@
+package com.br.springwebflux.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//limites de requisições simultâneas em /movies, ajustados pela latência observada (AIMD)
+@Data
+@Component
+@ConfigurationProperties(prefix = "concurrency-limit")
+public class ConcurrencyLimitProperties {
+
+    private boolean enabled = true;
+    //vai no Retry-After das respostas 503, arredondado para segundos
+    private Duration retryAfter = Duration.ofSeconds(1);
+    private Limit read = new Limit(40, 10, 400, Duration.ofMillis(250));
+    //escritas seguram a conexão por mais tempo (transação, lotes), então começam menores
+    private Limit write = new Limit(20, 5, 100, Duration.ofMillis(500));
+
+    @Data
+    public static class Limit {
+        private int initialLimit;
+        private int minLimit;
+        private int maxLimit;
+        //acima dessa latência a requisição conta como sinal de sobrecarga
+        private Duration latencyThreshold;
+        //fator aplicado ao limite a cada sinal de sobrecarga
+        private double backoffRatio = 0.9;
+
+        public Limit() {
+        }
+
+        Limit(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold) {
+            this.initialLimit = initialLimit;
+            this.minLimit = minLimit;
+            this.maxLimit = maxLimit;
+            this.latencyThreshold = latencyThreshold;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+//corta o excesso de requisições em /movies antes que elas se acumulem esperando conexão no pool do R2DBC
+//leitura e escrita têm limites separados, então uma rajada de escritas lentas não derruba as leituras
+//roda antes do Spring Security: sob sobrecarga nem o Basic (bcrypt) é verificado
+@Component
+@ConditionalOnProperty(prefix = "concurrency-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class ConcurrencyLimitWebFilter implements WebFilter, Ordered {
+
+    //o WebFilterChainProxy do Spring Security fica em -100
+    static final int ORDER = -200;
+    static final String PATH = "/movies";
+    //SSE fica aberto enquanto o cliente quiser e não usa conexão do pool por requisição
+    static final String CHANGES_PATH = "/movies/changes";
+
+    private final Route reads;
+    private final Route writes;
+    private final String retryAfter;
+
+    public ConcurrencyLimitWebFilter(ConcurrencyLimitProperties properties, MeterRegistry meterRegistry) {
+        long now = System.nanoTime();
+        this.reads = new Route("read", new AimdConcurrencyLimiter(properties.getRead(), now), meterRegistry);
+        this.writes = new Route("write", new AimdConcurrencyLimiter(properties.getWrite(), now), meterRegistry);
+        this.retryAfter = String.valueOf(Math.max(1, properties.getRetryAfter().getSeconds()));
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        String path = request.getPath().pathWithinApplication().value();
+        if (!(path.equals(PATH) || path.startsWith(PATH + "/")) || path.equals(CHANGES_PATH)) {
+            return chain.filter(exchange);
+        }
+        Route route = isRead(request.getMethod()) ? reads : writes;
+        AimdConcurrencyLimiter limiter = route.limiter;
+        if (!limiter.tryAcquire()) {
+            route.rejected.increment();
+            exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter);
+            return Mono.error(new StacklessResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "Too many requests in progress, try again later"));
+        }
+        //streams (NDJSON, ingest) seguram a vaga até o fim, mas a duração deles não diz nada sobre a latência
+        boolean sampled = !isStreaming(request);
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnSuccess(v -> complete(limiter, sampled, start, isServerError(exchange.getResponse().getStatusCode())))
+                .doOnError(e -> complete(limiter, sampled, start, isOverload(e)))
+                .doOnCancel(limiter::release);
+    }
+
+    private static void complete(AimdConcurrencyLimiter limiter, boolean sampled, long start, boolean overloaded) {
+        if (sampled) {
+            limiter.onSample(start, System.nanoTime(), overloaded);
+        }
+        limiter.release();
+    }
+
+    private static boolean isRead(HttpMethod method) {
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+    }
+
+    private static boolean isStreaming(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        MediaType contentType = headers.getContentType();
+        if (contentType != null && isStreaming(contentType)) {
+            return true;
+        }
+        return headers.getAccept().stream().anyMatch(ConcurrencyLimitWebFilter::isStreaming);
+    }
+
+    private static boolean isStreaming(MediaType mediaType) {
+        return CodecConfig.APPLICATION_NDJSON.equalsTypeAndSubtype(mediaType)
+                || MediaType.APPLICATION_STREAM_JSON.equalsTypeAndSubtype(mediaType)
+                || MediaType.TEXT_EVENT_STREAM.equalsTypeAndSubtype(mediaType);
+    }
+
+    private static boolean isServerError(HttpStatus status) {
+        return status != null && status.is5xxServerError();
+    }
+
+    //404, 409, 412... são respostas normais; o resto (pool esgotado, timeout, erro do banco) vira 5xx
+    private static boolean isOverload(Throwable error) {
+        return !(error instanceof ResponseStatusException) || ((ResponseStatusException) error).getStatus().is5xxServerError();
+    }
+
+    private static class Route {
+        private final AimdConcurrencyLimiter limiter;
+        private final Counter rejected;
+
+        Route(String name, AimdConcurrencyLimiter limiter, MeterRegistry meterRegistry) {
+            this.limiter = limiter;
+            this.rejected = Counter.builder("http.server.concurrency.rejected")
+                    .tag("route", name)
+                    .register(meterRegistry);
+            Gauge.builder("http.server.concurrency.limit", limiter, AimdConcurrencyLimiter::getLimit)
+                    .tag("route", name)
+                    .register(meterRegistry);
+            Gauge.builder("http.server.concurrency.in-flight", limiter, AimdConcurrencyLimiter::getInFlight)
+                    .tag("route", name)
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.br.springwebflux.config;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.autoconfigure.r2dbc.EmbeddedDatabaseConnection;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.r2dbc.connectionfactory.init.CompositeDatabasePopulator;
+import org.springframework.data.r2dbc.connectionfactory.init.ConnectionFactoryInitializer;
+import org.springframework.data.r2dbc.connectionfactory.init.ResourceDatabasePopulator;
+import org.springframework.data.r2dbc.connectionfactory.init.ScriptUtils;
+import org.springframework.util.StringUtils;
+
+@Slf4j
+@Configuration
+public class DatabaseConfig {
+
+    //substitui o ConnectionFactory do Spring Boot, que não expõe maxAcquireTime nem o warm-up
+    //as métricas r2dbc.pool.* (acquired, pending, idle, allocated) são registradas pelo actuator
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(R2dbcProperties r2dbcProperties, DatabaseProperties databaseProperties) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder
+                .of(r2dbcProperties, () -> EmbeddedDatabaseConnection.NONE)
+                .build();
+        DatabaseProperties.Pool pool = databaseProperties.getPool();
+        ConnectionPoolConfiguration.Builder builder = ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxAcquireTime(pool.getMaxAcquireTime())
+                .maxCreateConnectionTime(pool.getMaxCreateConnectionTime())
+                .maxIdleTime(pool.getMaxIdleTime());
+        if (StringUtils.hasText(pool.getValidationQuery())) {
+            builder.validationQuery(pool.getValidationQuery());
+        }
+        return new ConnectionPool(builder.build());
+    }
+
+    //roda antes do servidor subir, então a primeira requisição já encontra conexões abertas
+    //se o banco não responder a aplicação sobe assim mesmo e o pool abre as conexões sob demanda
+    @Bean
+    @ConditionalOnProperty(name = "database.pool.warmup", havingValue = "true")
+    public SmartInitializingSingleton connectionPoolWarmup(ConnectionPool connectionPool, DatabaseProperties databaseProperties) {
+        return () -> {
+            try {
+                Integer connections = connectionPool.warmup().block(databaseProperties.getPool().getWarmupTimeout());
+                log.info("Connection pool warmed up with {} connections", connections);
+            } catch (RuntimeException e) {
+                log.warn("Could not warm up the connection pool, connections will be opened on demand", e);
+            }
+        };
+    }
+
+    //os scripts são idempotentes, então podem rodar a cada inicialização
+    @Bean
+    @ConditionalOnProperty(name = "movies.schema.initialize", havingValue = "true")
+    public ConnectionFactoryInitializer schemaInitializer(ConnectionFactory connectionFactory) {
+        ConnectionFactoryInitializer initializer = new ConnectionFactoryInitializer();
+        initializer.setConnectionFactory(connectionFactory);
+        //o script dos triggers vai inteiro num statement só, o separador ";" quebraria o corpo das funções
+        ResourceDatabasePopulator triggers = new ResourceDatabasePopulator(new ClassPathResource("db/movie-changes.sql"));
+        triggers.setSeparator(ScriptUtils.EOF_STATEMENT_SEPARATOR);
+        initializer.setDatabasePopulator(new CompositeDatabasePopulator(
+                new ResourceDatabasePopulator(new ClassPathResource("db/schema.sql")), triggers));
+        return initializer;
+    }
+}
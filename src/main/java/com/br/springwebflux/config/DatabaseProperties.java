@@ -0,0 +1,31 @@
+package com.br.springwebflux.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+//url, usuário e senha continuam em spring.r2dbc, aqui fica só o pool
+@Data
+@Component
+@ConfigurationProperties(prefix = "database")
+public class DatabaseProperties {
+
+    private Pool pool = new Pool();
+
+    @Data
+    public static class Pool {
+        private int initialSize = 10;
+        private int maxSize = 20;
+        //com o pool esgotado a requisição falha depois desse tempo em vez de esperar para sempre
+        private Duration maxAcquireTime = Duration.ofSeconds(5);
+        private Duration maxCreateConnectionTime = Duration.ofSeconds(10);
+        private Duration maxIdleTime = Duration.ofMinutes(30);
+        //vazio: validação local, sem ida ao banco; uma query (ex.: SELECT 1) custa um round trip a cada acquire
+        private String validationQuery;
+        //abre as initialSize conexões antes do servidor aceitar requisições
+        private boolean warmup = false;
+        private Duration warmupTimeout = Duration.ofSeconds(10);
+    }
+}
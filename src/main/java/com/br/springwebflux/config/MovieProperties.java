@@ -0,0 +1,74 @@
+package com.br.springwebflux.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "movies")
+public class MovieProperties {
+
+    private Page page = new Page();
+    private Stream stream = new Stream();
+    private Batch batch = new Batch();
+    private Cache cache = new Cache();
+    private Search search = new Search();
+    private Changes changes = new Changes();
+    private Lookup lookup = new Lookup();
+
+    @Data
+    public static class Page {
+        //tamanho usado quando o cliente não informa o limit
+        private int defaultSize = 20;
+        //limite imposto pelo servidor, mesmo que o cliente peça mais
+        private int maxSize = 100;
+    }
+
+    @Data
+    public static class Stream {
+        //quantidade de linhas lidas do cursor do Postgres por vez
+        private int fetchSize = 100;
+    }
+
+    @Data
+    public static class Batch {
+        //filmes por INSERT; o Postgres aceita no máximo 65535 parâmetros por statement
+        private int chunkSize = 500;
+    }
+
+    @Data
+    public static class Cache {
+        private boolean enabled = true;
+        //quantidade máxima de entradas em cada cache (por id e por título)
+        private long maxSize = 10_000;
+        private Duration ttl = Duration.ofMinutes(5);
+        //tempo que um 404 fica em cache
+        private Duration negativeTtl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Search {
+        //tamanho mínimo do termo para a busca "contém", que depende do índice trigram
+        private int minContainsLength = 3;
+    }
+
+    @Data
+    public static class Lookup {
+        //ids por requisição no GET /movies?ids=; acima disso a resposta é 400
+        private int maxIds = 100;
+    }
+
+    @Data
+    public static class Changes {
+        //eventos guardados por cliente do feed; quando enche, o cliente recebe resync em vez dos eventos
+        private int bufferSize = 256;
+        //comentário SSE enviado sem eventos, mantém a conexão aberta em proxies e detecta clientes que sumiram
+        private Duration heartbeat = Duration.ofSeconds(15);
+        //espera entre as tentativas de reconectar ao banco para o LISTEN
+        private Duration minReconnectDelay = Duration.ofSeconds(1);
+        private Duration maxReconnectDelay = Duration.ofSeconds(30);
+    }
+}
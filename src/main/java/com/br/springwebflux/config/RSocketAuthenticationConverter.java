@@ -0,0 +1,61 @@
+package com.br.springwebflux.config;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.rsocket.metadata.AuthMetadataCodec;
+import io.rsocket.metadata.WellKnownAuthType;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.springframework.core.codec.ByteArrayDecoder;
+import org.springframework.messaging.rsocket.DefaultMetadataExtractor;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.rsocket.api.PayloadExchange;
+import org.springframework.security.rsocket.authentication.PayloadExchangeAuthenticationConverter;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+
+//lê o metadata message/x.rsocket.authentication.v0: usuário e senha (simple) ou o token do /auth/token (bearer)
+//o conversor do Spring Security transforma bearer em token OAuth2, que esta aplicação não usa
+class RSocketAuthenticationConverter implements PayloadExchangeAuthenticationConverter {
+
+    private static final MimeType AUTHENTICATION_MIME_TYPE =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
+    private static final String AUTHENTICATION = "authentication";
+
+    private final DefaultMetadataExtractor metadataExtractor = new DefaultMetadataExtractor(new ByteArrayDecoder());
+
+    RSocketAuthenticationConverter() {
+        metadataExtractor.metadataToExtract(AUTHENTICATION_MIME_TYPE, byte[].class, AUTHENTICATION);
+    }
+
+    @Override
+    public Mono<Authentication> convert(PayloadExchange exchange) {
+        return Mono.fromCallable(() -> {
+            byte[] metadata = (byte[]) metadataExtractor
+                    .extract(exchange.getPayload(), exchange.getMetadataMimeType())
+                    .get(AUTHENTICATION);
+            return metadata == null ? null : authentication(Unpooled.wrappedBuffer(metadata));
+        });
+    }
+
+    private Authentication authentication(ByteBuf metadata) {
+        if (!AuthMetadataCodec.isWellKnownAuthType(metadata)) {
+            return null;
+        }
+        WellKnownAuthType type = AuthMetadataCodec.readWellKnownAuthType(metadata);
+        if (WellKnownAuthType.SIMPLE.equals(type)) {
+            String username = AuthMetadataCodec.readUsername(metadata).toString(StandardCharsets.UTF_8);
+            String password = AuthMetadataCodec.readPassword(metadata).toString(StandardCharsets.UTF_8);
+            return new UsernamePasswordAuthenticationToken(username, password);
+        }
+        if (WellKnownAuthType.BEARER.equals(type)) {
+            String token = new String(AuthMetadataCodec.readBearerTokenAsCharArray(metadata));
+            return new PreAuthenticatedAuthenticationToken(token, token);
+        }
+        return null;
+    }
+}
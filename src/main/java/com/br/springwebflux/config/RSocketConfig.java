@@ -0,0 +1,82 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.service.TokenService;
+import io.rsocket.core.RSocketServer;
+import io.rsocket.transport.netty.server.WebsocketRouteTransport;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.rsocket.server.RSocketServerCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyRouteProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.rsocket.annotation.support.RSocketMessageHandler;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.config.annotation.rsocket.EnableRSocketSecurity;
+import org.springframework.security.config.annotation.rsocket.PayloadInterceptorOrder;
+import org.springframework.security.config.annotation.rsocket.RSocketSecurity;
+import org.springframework.security.rsocket.authentication.AuthenticationPayloadInterceptor;
+import org.springframework.security.rsocket.core.PayloadSocketAcceptorInterceptor;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import reactor.core.publisher.Mono;
+
+//RSocket por TCP (spring.rsocket.server.port, servidor próprio do Spring Boot)
+//e por WebSocket na mesma porta do HTTP (rsocket.websocket.mapping-path)
+//as rotas ficam no MovieRSocketController; o payload é CBOR ou JSON, conforme o dataMimeType do setup
+@Configuration
+@EnableRSocketSecurity
+public class RSocketConfig {
+
+    //o Spring Boot só sobe um dos dois transportes, o WebSocket é registrado aqui no servidor HTTP
+    //os customizers aplicam a segurança do RSocket, igual ao servidor TCP
+    @Bean
+    @ConditionalOnProperty(name = "rsocket.websocket.mapping-path")
+    public NettyRouteProvider rsocketWebSocketRouteProvider(@Value("${rsocket.websocket.mapping-path}") String mappingPath,
+                                                            RSocketMessageHandler messageHandler,
+                                                            ObjectProvider<RSocketServerCustomizer> customizers) {
+        RSocketServer server = RSocketServer.create(messageHandler.responder());
+        customizers.orderedStream().forEach(customizer -> customizer.customize(server));
+        return routes -> routes.ws(mappingPath, WebsocketRouteTransport.newHandler(server.asConnectionAcceptor()));
+    }
+
+    //as credenciais vão no setup e valem para a conexão inteira: o bcrypt roda uma vez por conexão,
+    //não por requisição; uma requisição também pode mandar as suas, que valem só para ela
+    //mesmas regras do HTTP: leitura exige USER e gravação exige ADMIN
+    @Bean
+    public PayloadSocketAcceptorInterceptor rsocketInterceptor(RSocketSecurity rsocket,
+                                                               ReactiveAuthenticationManager authenticationManager,
+                                                               ObjectProvider<TokenService> tokenService) {
+        AuthenticationPayloadInterceptor authentication = new AuthenticationPayloadInterceptor(
+                rsocketAuthenticationManager(authenticationManager, tokenService));
+        authentication.setAuthenticationConverter(new RSocketAuthenticationConverter());
+        authentication.setOrder(PayloadInterceptorOrder.AUTHENTICATION.getOrder());
+        //@formatter:off
+        return rsocket
+                .addPayloadInterceptor(authentication)
+                .authorizePayload(authorize -> authorize
+                        .setup().authenticated()
+                        .route("movies.save").hasRole("ADMIN")
+                        .route("movies.**").hasRole("USER")
+                        .anyRequest().authenticated()
+                        .anyExchange().permitAll())
+                .build();
+        //@formatter:on
+    }
+
+    //usuário e senha passam pelo mesmo manager do HTTP Basic (scheduler do bcrypt e cache de credenciais)
+    //o bearer só é aceito com auth.token.enabled
+    private ReactiveAuthenticationManager rsocketAuthenticationManager(ReactiveAuthenticationManager authenticationManager,
+                                                                       ObjectProvider<TokenService> tokenService) {
+        return authentication -> {
+            if (!(authentication instanceof PreAuthenticatedAuthenticationToken)) {
+                return authenticationManager.authenticate(authentication);
+            }
+            TokenService tokens = tokenService.getIfAvailable();
+            if (tokens == null) {
+                return Mono.error(new BadCredentialsException("Bearer tokens are disabled"));
+            }
+            return tokens.verify((String) authentication.getCredentials());
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.ReactiveAuthenticationManager;
+import org.springframework.security.core.Authentication;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.RejectedExecutionException;
+
+//fila do scheduler de hash cheia vira 503 na hora, sem segurar a requisição
+//sem stack trace: é justamente o caminho que mais roda quando chega uma enxurrada de requisições
+public class RejectingAuthenticationManager implements ReactiveAuthenticationManager {
+
+    private final ReactiveAuthenticationManager delegate;
+    private final Counter rejected;
+
+    public RejectingAuthenticationManager(ReactiveAuthenticationManager delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.rejected = meterRegistry.counter("auth.password.hash.rejected");
+    }
+
+    @Override
+    public Mono<Authentication> authenticate(Authentication authentication) {
+        return delegate.authenticate(authentication)
+                .onErrorMap(RejectedExecutionException.class, e -> {
+                    rejected.increment();
+                    return new StacklessResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Authentication is overloaded, try again later");
+                });
+    }
+}
@@ -0,0 +1,112 @@
+package com.br.springwebflux.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.reactivestreams.Publisher;
+import org.springframework.aop.framework.Advised;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+//mede cada chamada aos repositórios: spring.data.repository.invocations{repository, method, state, exception}
+//o count do timer é o número de queries e o tempo vai do subscribe até o término, não da montagem do Mono
+//mesmo nome de métrica que o Spring Boot passa a publicar nas versões novas do Spring Data
+@Component
+public class RepositoryMetricsPostProcessor implements BeanPostProcessor {
+
+    static final String METRIC_NAME = "spring.data.repository.invocations";
+
+    //o registry é buscado só na primeira chamada para não antecipar a criação dele
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public RepositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof Repository && bean instanceof Advised && !((Advised) bean).isFrozen()) {
+            Advised advised = (Advised) bean;
+            //os interceptors do Spring Data que executam a query não chamam proceed, então precisa ser o primeiro
+            advised.addAdvice(0, new TimingInterceptor(repositoryName(advised)));
+        }
+        return bean;
+    }
+
+    private static String repositoryName(Advised advised) {
+        for (Class<?> repositoryInterface : advised.getProxiedInterfaces()) {
+            if (Repository.class.isAssignableFrom(repositoryInterface)) {
+                return repositoryInterface.getSimpleName();
+            }
+        }
+        return advised.getTargetClass() == null ? "unknown" : advised.getTargetClass().getSimpleName();
+    }
+
+    private class TimingInterceptor implements MethodInterceptor {
+
+        private final String repository;
+
+        private TimingInterceptor(String repository) {
+            this.repository = repository;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            String method = invocation.getMethod().getName();
+            //Mono e Flux são medidos do subscribe até o término, a amostra de fora só serve para o caminho síncrono
+            boolean reactive = Publisher.class.isAssignableFrom(invocation.getMethod().getReturnType());
+            Timer.Sample sample = reactive ? null : Timer.start(meterRegistry.getObject());
+            Object result;
+            try {
+                result = invocation.proceed();
+            } catch (Throwable e) {
+                stop(sample == null ? Timer.start(meterRegistry.getObject()) : sample, method, "ERROR", e);
+                throw e;
+            }
+            if (result instanceof Mono) {
+                Mono<?> mono = (Mono<?>) result;
+                return Mono.defer(() -> {
+                    Timer.Sample subscription = Timer.start(meterRegistry.getObject());
+                    return mono.doOnError(e -> stop(subscription, method, "ERROR", e))
+                            .doFinally(signal -> stop(subscription, method, signal));
+                });
+            }
+            if (result instanceof Flux) {
+                Flux<?> flux = (Flux<?>) result;
+                return Flux.defer(() -> {
+                    Timer.Sample subscription = Timer.start(meterRegistry.getObject());
+                    return flux.doOnError(e -> stop(subscription, method, "ERROR", e))
+                            .doFinally(signal -> stop(subscription, method, signal));
+                });
+            }
+            if (sample != null) {
+                stop(sample, method, "SUCCESS", null);
+            }
+            return result;
+        }
+
+        //o erro já foi registrado no doOnError, aqui ficam o sucesso e o cancelamento
+        private void stop(Timer.Sample sample, String method, SignalType signal) {
+            if (signal == SignalType.ON_COMPLETE) {
+                stop(sample, method, "SUCCESS", null);
+            } else if (signal == SignalType.CANCEL) {
+                stop(sample, method, "CANCELED", null);
+            }
+        }
+
+        private void stop(Timer.Sample sample, String method, String state, Throwable error) {
+            sample.stop(meterRegistry.getObject().timer(METRIC_NAME, Tags.of(
+                    "repository", repository,
+                    "method", method,
+                    "state", state,
+                    "exception", error == null ? "None" : error.getClass().getSimpleName())));
+        }
+    }
+}
@@ -1,19 +1,44 @@
 package com.br.springwebflux.config;
 
+import com.br.springwebflux.service.TokenService;
 import com.br.springwebflux.service.UserDetailsServiceImp;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.security.authentication.ReactiveAuthenticationManager;
-import org.springframework.security.authentication.UserDetailsRepositoryReactiveAuthenticationManager;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
+import org.springframework.security.config.web.server.SecurityWebFiltersOrder;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.security.web.server.ServerAuthenticationEntryPoint;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.security.web.server.authentication.ServerAuthenticationEntryPointFailureHandler;
+import org.springframework.security.web.server.context.NoOpServerSecurityContextRepository;
+import org.springframework.security.web.server.savedrequest.NoOpServerRequestCache;
+import org.springframework.security.web.server.util.matcher.ServerWebExchangeMatchers;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 @EnableWebFluxSecurity
@@ -21,10 +46,77 @@ import org.springframework.security.web.server.SecurityWebFilterChain;
 public class SecurityConfig {
 
     @Bean
+    @ConditionalOnProperty(name = "auth.token.enabled", havingValue = "false", matchIfMissing = true)
     public SecurityWebFilterChain securityWebFilterChain(ServerHttpSecurity http) {
+        authorizeExchanges(http);
+        //@formatter:off
+        return http
+                .csrf().disable()
+                .formLogin()
+                .and()
+                .httpBasic()
+                .and()
+                .build();
+        //@formatter:on
+    }
+
+    //modo stateless: o Basic (e o bcrypt) só roda aqui, na troca das credenciais pelo token
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @ConditionalOnProperty(name = "auth.token.enabled", havingValue = "true")
+    public SecurityWebFilterChain tokenLoginWebFilterChain(ServerHttpSecurity http) {
         //@formatter:off
         return http
+                .securityMatcher(ServerWebExchangeMatchers.pathMatchers(HttpMethod.POST, "/auth/token"))
                 .csrf().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .requestCache().requestCache(NoOpServerRequestCache.getInstance())
+                .and()
+                .authorizeExchange()
+                .anyExchange().authenticated()
+                .and()
+                .httpBasic()
+                .and()
+                .build();
+        //@formatter:on
+    }
+
+    //demais requisições só aceitam Bearer, sem WebSession e sem consulta ao banco
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @ConditionalOnProperty(name = "auth.token.enabled", havingValue = "true")
+    public SecurityWebFilterChain tokenWebFilterChain(ServerHttpSecurity http, TokenService tokenService) {
+        ServerAuthenticationEntryPoint entryPoint = (exchange, e) -> Mono.fromRunnable(() -> {
+            exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
+            exchange.getResponse().getHeaders().set(HttpHeaders.WWW_AUTHENTICATE, TokenService.TOKEN_TYPE);
+        });
+        ReactiveAuthenticationManager tokenAuthenticationManager =
+                authentication -> tokenService.verify((String) authentication.getCredentials());
+        AuthenticationWebFilter bearerFilter = new AuthenticationWebFilter(tokenAuthenticationManager);
+        bearerFilter.setServerAuthenticationConverter(this::bearerToken);
+        bearerFilter.setAuthenticationFailureHandler(new ServerAuthenticationEntryPointFailureHandler(entryPoint));
+
+        authorizeExchanges(http);
+        //@formatter:off
+        return http
+                .csrf().disable()
+                .formLogin().disable()
+                .httpBasic().disable()
+                .logout().disable()
+                .securityContextRepository(NoOpServerSecurityContextRepository.getInstance())
+                .requestCache().requestCache(NoOpServerRequestCache.getInstance())
+                .and()
+                .exceptionHandling().authenticationEntryPoint(entryPoint)
+                .and()
+                .addFilterAt(bearerFilter, SecurityWebFiltersOrder.AUTHENTICATION)
+                .build();
+        //@formatter:on
+    }
+
+    //regras de acesso iguais nos dois modos
+    private void authorizeExchanges(ServerHttpSecurity http) {
+        //@formatter:off
+        http
                 .authorizeExchange()
                 .pathMatchers(HttpMethod.POST, "/movies/**").hasRole("ADMIN")
                 .pathMatchers(HttpMethod.PUT, "/movies/**").hasRole("ADMIN")
@@ -35,19 +127,56 @@ public class SecurityConfig {
                         "/v3/api-docs/**",
                         "/webjars/**")
                 .permitAll()
-                .anyExchange().authenticated()
-                .and()
-                .formLogin()
-                .and()
-                .httpBasic()
-                .and()
-                .build();
+                //o Prometheus faz o scrape sem credenciais; restringir o acesso pela rede
+                .pathMatchers(HttpMethod.GET, "/actuator/health", "/actuator/prometheus").permitAll()
+                .anyExchange().authenticated();
         //@formatter:on
     }
 
+    private Mono<Authentication> bearerToken(ServerWebExchange exchange) {
+        String authorization = exchange.getRequest().getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+        String prefix = TokenService.TOKEN_TYPE + " ";
+        if (authorization == null || !authorization.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return Mono.empty();
+        }
+        String token = authorization.substring(prefix.length()).trim();
+        return Mono.just(new PreAuthenticatedAuthenticationToken(token, token));
+    }
+
+    @Bean
+    ReactiveAuthenticationManager authenticationManager(UserDetailsServiceImp userDetailsServiceImp,
+                                                        PasswordEncoder passwordEncoder,
+                                                        Scheduler passwordHashScheduler,
+                                                        MeterRegistry meterRegistry) {
+        ReactiveAuthenticationManager authenticationManager =
+                new CacheFirstAuthenticationManager(userDetailsServiceImp, passwordEncoder, passwordHashScheduler);
+        return new RejectingAuthenticationManager(authenticationManager, meterRegistry);
+    }
+
+    //pool próprio e limitado para o bcrypt, fora do event loop do Netty e do boundedElastic compartilhado
+    @Bean(destroyMethod = "dispose")
+    Scheduler passwordHashScheduler(AuthProperties authProperties, MeterRegistry meterRegistry) {
+        AuthProperties.Hashing hashing = authProperties.getHashing();
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("password-hash-");
+        threadFactory.setDaemon(true);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(hashing.getThreads(), hashing.getThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(hashing.getQueueCapacity()),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy());
+        return Schedulers.fromExecutorService(
+                ExecutorServiceMetrics.monitor(meterRegistry, executor, "password-hash"), "password-hash");
+    }
+
+    //bcrypt custa dezenas de ms por verificação, o cache evita repetir para a mesma senha
     @Bean
-    ReactiveAuthenticationManager authenticationManager(UserDetailsServiceImp userDetailsServiceImp) {
-        return new UserDetailsRepositoryReactiveAuthenticationManager(userDetailsServiceImp);
+    PasswordEncoder passwordEncoder(AuthProperties authProperties, MeterRegistry meterRegistry) {
+        PasswordEncoder passwordEncoder = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        AuthProperties.CredentialCache credentialCache = authProperties.getCredentialCache();
+        if (!credentialCache.isEnabled()) {
+            return passwordEncoder;
+        }
+        return new CachingPasswordEncoder(passwordEncoder, credentialCache.getMaxSize(), credentialCache.getTtl(), meterRegistry);
     }
 
 
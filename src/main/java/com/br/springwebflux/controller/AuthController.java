@@ -0,0 +1,34 @@
+package com.br.springwebflux.controller;
+
+import com.br.springwebflux.model.AccessToken;
+import com.br.springwebflux.service.TokenService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+//só existe no modo stateless, o Basic é exigido apenas aqui
+@AllArgsConstructor
+@RestController
+@RequestMapping("auth")
+@ConditionalOnProperty(name = "auth.token.enabled", havingValue = "true")
+public class AuthController {
+
+    private final TokenService tokenService;
+
+    @PostMapping("token")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Exchange Basic credentials for a short-lived bearer token",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"auth"})
+    public Mono<AccessToken> token(Authentication authentication) {
+        return Mono.fromCallable(() -> tokenService.issue(authentication));
+    }
+}
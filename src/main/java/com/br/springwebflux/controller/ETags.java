@@ -0,0 +1,65 @@
+package com.br.springwebflux.controller;
+
+import com.br.springwebflux.model.Movie;
+
+//ETag forte de um filme: id e versão entre aspas, ex: "7-3"
+//só a versão não basta: todo filme novo começa na versão 0 e /movies/title/{title} pode passar
+//a devolver outro filme com o mesmo título, que teria a mesma ETag
+//ETag das listagens: o contador de alterações da tabela, ex: "movies-42"
+public final class ETags {
+
+    public static final String WILDCARD = "*";
+
+    private ETags() {
+    }
+
+    public static String of(Movie movie) {
+        if (movie.getId() == null || movie.getVersion() == null) {
+            return null;
+        }
+        return "\"" + movie.getId() + "-" + movie.getVersion() + "\"";
+    }
+
+    public static String ofChanges(long changeCounter) {
+        return "\"movies-" + changeCounter + "\"";
+    }
+
+    //If-None-Match usa comparação fraca (W/"3" casa com "3") e pode trazer uma lista de ETags
+    public static boolean matchesIfNoneMatch(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (WILDCARD.equals(candidate) || eTag.equals(candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //If-Match usa comparação forte: ETags fracas (W/) ou em outro formato nunca casam
+    //retorna null quando o header não aponta para uma única versão do filme id
+    public static Long parseVersion(String ifMatch, Long id) {
+        String tag = ifMatch.trim();
+        if (tag.length() < 5 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            return null;
+        }
+        String value = tag.substring(1, tag.length() - 1);
+        int separator = value.indexOf('-');
+        if (separator < 1) {
+            return null;
+        }
+        try {
+            if (!Long.valueOf(value.substring(0, separator)).equals(id)) {
+                return null;
+            }
+            return Long.valueOf(value.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,7 +1,14 @@
 package com.br.springwebflux.controller;
 
+import com.br.springwebflux.config.CodecConfig;
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import com.br.springwebflux.model.ChunkResult;
 import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieChangeEvent;
+import com.br.springwebflux.model.MovieLookup;
+import com.br.springwebflux.model.MoviePage;
 import com.br.springwebflux.repository.MovieRepository;
+import com.br.springwebflux.service.MovieChangeFeed;
 import com.br.springwebflux.service.MovieService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.enums.SecuritySchemeType;
@@ -9,7 +16,11 @@ import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.security.SecurityScheme;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
@@ -18,6 +29,7 @@ import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.function.Supplier;
 
 
 @AllArgsConstructor
@@ -31,16 +43,89 @@ import java.util.List;
 )
 public class MovieController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final MovieService movieService;
+    private final MovieChangeFeed movieChangeFeed;
 
+    //o cursor da próxima página vai no header para manter o corpo como uma lista de filmes
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
 //    @PreAuthorize("hasRole('ADMIN')")
-    @Operation(summary = "List all movies",
+    @Operation(summary = "List movies page by page, using the id of the last movie as cursor",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"movies"})
+    public Mono<ResponseEntity<List<Movie>>> findAll(@RequestParam(required = false) Long after,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        return withChangesETag(ifNoneMatch, () -> movieService.validatePage(limit), () -> movieService.findPage(after, limit));
+    }
+
+    //vários filmes numa requisição só (ex.: ?ids=3,1,7), na ordem pedida; os que não existem vêm com missing=true
+    @GetMapping(params = "ids")
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Find many movies by id in one request, in the order of the ids",
             security = @SecurityRequirement(name = "Basic Authentication"),
             tags = {"movies"})
-    public Flux<Movie> findAll(){
-        return movieService.findAll();
+    public Flux<MovieLookup> findAllById(@RequestParam List<Long> ids){
+        return movieService.findAllById(ids);
+    }
+
+    //mesmo recurso, mas cada filme é enviado assim que sai do cursor do banco
+    @GetMapping(produces = {CodecConfig.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Stream all movies as NDJSON or server-sent events",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"movies"})
+    public Flux<Movie> stream(@RequestParam(required = false) Long after){
+        return movieService.stream(after);
+    }
+
+    //o nome do evento SSE é o tipo (create, update, delete, resync); resync pede para recarregar a listagem
+    //o heartbeat vai como comentário, que o EventSource do navegador ignora
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Follow movie creations, updates and deletions as server-sent events",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"movies"})
+    public Flux<ServerSentEvent<MovieChangeEvent>> changes(){
+        return Flux.merge(
+                movieChangeFeed.changes()
+                        .map(event -> ServerSentEvent.builder(event).event(event.getType()).build()),
+                movieChangeFeed.heartbeats()
+                        .map(tick -> ServerSentEvent.<MovieChangeEvent>builder().comment("heartbeat").build()));
+    }
+
+    //com a ETag na ResponseEntity o Spring responde 304 ao If-None-Match sem serializar o filme,
+    //que normalmente vem do MovieCache sem ir ao banco
+    private ResponseEntity<Movie> toResponseEntity(Movie movie){
+        String eTag = ETags.of(movie);
+        return eTag == null ? ResponseEntity.ok(movie) : ResponseEntity.ok().eTag(eTag).body(movie);
+    }
+
+    //o contador é lido antes da página: se uma escrita acontecer no meio, a ETag fica velha
+    //e o próximo poll busca de novo; o contrário (ETag nova com dados velhos) não acontece
+    //quando casa com o If-None-Match, a página nem é consultada, mas os parâmetros são validados antes
+    private Mono<ResponseEntity<List<Movie>>> withChangesETag(String ifNoneMatch, Runnable validation,
+                                                             Supplier<Mono<MoviePage>> page){
+        return Mono.fromRunnable(validation)
+                .then(Mono.defer(movieService::changeCounter))
+                .map(ETags::ofChanges)
+                .flatMap(eTag -> ETags.matchesIfNoneMatch(ifNoneMatch, eTag)
+                        ? Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).<List<Movie>>build())
+                        : page.get().map(moviePage -> toResponseEntity(moviePage, eTag)))
+                .switchIfEmpty(Mono.defer(() -> page.get().map(moviePage -> toResponseEntity(moviePage, null))));
+    }
+
+    private ResponseEntity<List<Movie>> toResponseEntity(MoviePage page, String eTag){
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if(eTag != null){
+            builder.eTag(eTag);
+        }
+        if(page.getNextCursor() != null){
+            builder.header(NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return builder.body(page.getContent());
     }
 
     @GetMapping("/{id}")
@@ -48,8 +133,9 @@ public class MovieController {
     @Operation(
             security = @SecurityRequirement(name = "Basic Authentication"),
             tags = {"movie"})
-    public Mono<Movie> findById(@PathVariable Long id){
-        return movieService.findById(id);
+    public Mono<ResponseEntity<Movie>> findById(@PathVariable Long id){
+        return movieService.findById(id)
+                .map(this::toResponseEntity);
 
     }
     @ResponseStatus(HttpStatus.OK)
@@ -57,8 +143,23 @@ public class MovieController {
     @Operation(
             security = @SecurityRequirement(name = "Basic Authentication"),
             tags = {"movie"})
-    public Mono<Movie> findByTitle(@PathVariable  String title){
-        return movieService.findByTitle(title);
+    public Mono<ResponseEntity<Movie>> findByTitle(@PathVariable  String title){
+        return movieService.findByTitle(title)
+                .map(this::toResponseEntity);
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/search")
+    @Operation(summary = "Search movies by title ignoring case; mode is exact, prefix (default) or contains",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"movies"})
+    public Mono<ResponseEntity<List<Movie>>> search(@RequestParam String q,
+                                                    @RequestParam(required = false) String mode,
+                                                    @RequestParam(required = false) Long after,
+                                                    @RequestParam(required = false) Integer limit,
+                                                    @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch){
+        return withChangesETag(ifNoneMatch, () -> movieService.validateSearch(q, mode, limit),
+                () -> movieService.search(q, mode, after, limit));
     }
 
     @PostMapping
@@ -79,13 +180,57 @@ public class MovieController {
         return movieService.saveAll(movies);
     }
 
+    //recebe um filme por linha e responde com o resultado de cada lote gravado
+    @PostMapping(value = "/batch",
+            consumes = CodecConfig.APPLICATION_NDJSON_VALUE,
+            produces = CodecConfig.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    @Operation(summary = "Import movies sent as NDJSON, writing them in bounded chunks",
+            security = @SecurityRequirement(name = "Basic Authentication"),
+            tags = {"movie"})
+    public Flux<ChunkResult> ingest(@RequestBody Flux<Movie> movies){
+        return movieService.ingest(movies);
+    }
+
     @PutMapping("/{id}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
     @Operation(
             security = @SecurityRequirement(name = "Basic Authentication"),
             tags = {"movie"})
-    public Mono<Void> update(@PathVariable Long id, @Valid @RequestBody Movie movie){
-        return movieService.update(movie.withId(id));
+    //com If-Match a versão do header manda e a divergência vira 412,
+    //sem ele a versão do corpo (se vier) é usada e a divergência vira 409
+    //If-Match: * só exige que o filme exista (RFC 7232), então o 404 vira 412
+    //o 204 leva a ETag da versão nova, o cliente usa direto no próximo If-Match sem outro GET
+    public Mono<ResponseEntity<Void>> update(@PathVariable Long id,
+                                             @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+                                             @Valid @RequestBody Movie movie){
+        return conditionalUpdate(id, ifMatch, movie)
+                .map(updated -> ResponseEntity.noContent().eTag(ETags.of(updated)).build());
+    }
+
+    private Mono<Movie> conditionalUpdate(Long id, String ifMatch, Movie movie){
+        if(ifMatch == null){
+            return movieService.update(movie.withId(id));
+        }
+        if(ETags.WILDCARD.equals(ifMatch.trim())){
+            return movieService.update(movie.withId(id).withVersion(null))
+                    .onErrorMap(e -> hasStatus(e, HttpStatus.NOT_FOUND), e -> preconditionFailed());
+        }
+        Long version = ETags.parseVersion(ifMatch, id);
+        if(version == null){
+            return Mono.error(preconditionFailed());
+        }
+        return movieService.update(movie.withId(id).withVersion(version))
+                .onErrorMap(e -> hasStatus(e, HttpStatus.CONFLICT), e -> preconditionFailed());
+    }
+
+    private boolean hasStatus(Throwable throwable, HttpStatus status){
+        return throwable instanceof ResponseStatusException
+                && ((ResponseStatusException) throwable).getStatus() == status;
+    }
+
+    private ResponseStatusException preconditionFailed(){
+        return new StacklessResponseStatusException(HttpStatus.PRECONDITION_FAILED, "movie version does not match If-Match");
     }
 
     @DeleteMapping("/{id}")
@@ -0,0 +1,63 @@
+package com.br.springwebflux.controller;
+
+import com.br.springwebflux.model.ChunkResult;
+import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MoviePage;
+import com.br.springwebflux.model.MovieSearchRequest;
+import com.br.springwebflux.service.MovieService;
+import io.rsocket.exceptions.ApplicationErrorException;
+import lombok.AllArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageExceptionHandler;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+//as mesmas operações do MovieController por RSocket, para serviços internos que fazem muitas consultas pequenas
+//numa conexão que já está aberta e autenticada (ver RSocketConfig)
+@AllArgsConstructor
+@Controller
+public class MovieRSocketController {
+
+    private final MovieService movieService;
+
+    //request-response
+    @MessageMapping("movies.find")
+    public Mono<Movie> findById(Long id){
+        return movieService.findById(id);
+    }
+
+    //request-stream: a demanda do cliente chega até o cursor do banco, como no GET /movies em NDJSON
+    @MessageMapping("movies.list")
+    public Flux<Movie> stream(){
+        return movieService.stream(null);
+    }
+
+    //o cursor (id do último filme recebido) vai na rota, o Spring não aceita payload vazio num parâmetro opcional
+    @MessageMapping("movies.list.{after}")
+    public Flux<Movie> streamAfter(@DestinationVariable Long after){
+        return movieService.stream(after);
+    }
+
+    //request-stream com uma página da busca; a próxima página começa depois do id do último filme recebido
+    @MessageMapping("movies.search")
+    public Flux<Movie> search(MovieSearchRequest request){
+        return movieService.search(request.getQ(), request.getMode(), request.getAfter(), request.getLimit())
+                .flatMapIterable(MoviePage::getContent);
+    }
+
+    //request-channel: os filmes são gravados em lotes conforme chegam e cada lote gravado volta como resultado
+    @MessageMapping("movies.save")
+    public Flux<ChunkResult> save(Flux<Movie> movies){
+        return movieService.ingest(movies);
+    }
+
+    //erros esperados (404, 409, 400) voltam como APPLICATION_ERROR com status e motivo, ex.: "404 movie not found"
+    //sem o handler o Spring loga cada um deles como ERROR
+    @MessageExceptionHandler
+    public Mono<Void> handleResponseStatus(ResponseStatusException e){
+        return Mono.error(new ApplicationErrorException(e.getStatus().value() + " " + e.getReason()));
+    }
+}
@@ -0,0 +1,98 @@
+package com.br.springwebflux.exception;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//corpo de erro já serializado, com buracos só para os campos que mudam a cada requisição
+//é gerado a partir dos atributos do caminho normal (mesmas chaves, mesma ordem, mesmo ObjectMapper),
+//então o JSON sai igual ao do caminho normal
+class ErrorBodyTemplate {
+
+    static final String TIMESTAMP = "timestamp";
+    static final String PATH = "path";
+    static final String REQUEST_ID = "requestId";
+
+    private static final String MARKER = "\u0000error-body-template:";
+
+    private final ObjectMapper objectMapper;
+    //partes fixas intercaladas com os nomes dos campos dinâmicos: fixo, campo, fixo, campo, ..., fixo
+    private final List<byte[]> fixedParts;
+    private final List<String> fields;
+
+    private ErrorBodyTemplate(ObjectMapper objectMapper, List<byte[]> fixedParts, List<String> fields) {
+        this.objectMapper = objectMapper;
+        this.fixedParts = fixedParts;
+        this.fields = fields;
+    }
+
+    static ErrorBodyTemplate of(Map<String, Object> errorAttributes, ObjectMapper objectMapper) throws JsonProcessingException {
+        Map<String, Object> withMarkers = new LinkedHashMap<>(errorAttributes);
+        for (String field : new String[]{TIMESTAMP, PATH, REQUEST_ID}) {
+            withMarkers.computeIfPresent(field, (key, value) -> MARKER + key);
+        }
+        String json = objectMapper.writeValueAsString(withMarkers);
+
+        List<byte[]> fixedParts = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        String quotedMarker = objectMapper.writeValueAsString(MARKER);
+        //o marcador serializado é "\u0000error-body-template:, o nome do campo vem até a próxima aspa
+        String markerStart = quotedMarker.substring(0, quotedMarker.length() - 1);
+        int from = 0;
+        int start;
+        while ((start = json.indexOf(markerStart, from)) >= 0) {
+            int end = json.indexOf('"', start + markerStart.length());
+            fixedParts.add(json.substring(from, start).getBytes(StandardCharsets.UTF_8));
+            fields.add(json.substring(start + markerStart.length(), end));
+            from = end + 1;
+        }
+        fixedParts.add(json.substring(from).getBytes(StandardCharsets.UTF_8));
+        return new ErrorBodyTemplate(objectMapper, fixedParts, fields);
+    }
+
+    DataBuffer render(DataBufferFactory bufferFactory, Date timestamp, String path, String requestId) {
+        byte[][] values = new byte[fields.size()][];
+        int length = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = serialize(valueOf(fields.get(i), timestamp, path, requestId));
+            length += values[i].length;
+        }
+        for (byte[] fixedPart : fixedParts) {
+            length += fixedPart.length;
+        }
+        DataBuffer buffer = bufferFactory.allocateBuffer(length);
+        for (int i = 0; i < values.length; i++) {
+            buffer.write(fixedParts.get(i));
+            buffer.write(values[i]);
+        }
+        return buffer.write(fixedParts.get(values.length));
+    }
+
+    private static Object valueOf(String field, Date timestamp, String path, String requestId) {
+        switch (field) {
+            case TIMESTAMP:
+                return timestamp;
+            case PATH:
+                return path;
+            default:
+                return requestId;
+        }
+    }
+
+    //o ObjectMapper do codec decide o formato da data e o escape das strings, como no caminho normal
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("could not serialize error attribute " + value, e);
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package com.br.springwebflux.exception;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.web.ResourceProperties;
 import org.springframework.boot.autoconfigure.web.reactive.error.AbstractErrorWebExceptionHandler;
 import org.springframework.boot.web.error.ErrorAttributeOptions;
@@ -9,8 +15,12 @@ import org.springframework.boot.web.error.ErrorAttributeOptions.Include;
 import org.springframework.boot.web.reactive.error.ErrorAttributes;
 import org.springframework.context.ApplicationContext;
 import org.springframework.core.annotation.Order;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
 import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.AbstractJackson2Encoder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.reactive.function.BodyInserters;
@@ -23,20 +33,40 @@ import reactor.core.publisher.Mono;
 
 import static org.springframework.boot.web.error.ErrorAttributeOptions.defaults;
 
+@Slf4j
 @Component
 @Order(-2) //a ordem do DefaultErrorExceptionHandler é -1
 //tem que informar pra aplicação que handler tem que vir antes do DefaultErrorExceptionHandler
 
 public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler{
 
+    //http.server.errors{status, exception}: quantos erros cada status teve, e de qual exceção vieram
+    static final String ERRORS_METRIC = "http.server.errors";
+    //as mensagens das exceções sem stack trace são fixas, o limite só protege contra uma mensagem dinâmica
+    static final int MAX_TEMPLATES = 256;
 
+    private final ErrorAttributes errorAttributes;
+    private final MeterRegistry meterRegistry;
+    //mesmo ObjectMapper do encoder que escreve o corpo no caminho normal; null desliga o caminho rápido
+    private final ObjectMapper objectMapper;
+    private final Map<String, ErrorBodyTemplate> templates = new ConcurrentHashMap<>();
 
     public GlobalExceptionHandler(ErrorAttributes errorAttributes,
                                   ResourceProperties resourceProperties,
                                   ApplicationContext applicationContext,
-                                  ServerCodecConfigurer codecConfigurer) {
+                                  ServerCodecConfigurer codecConfigurer,
+                                  MeterRegistry meterRegistry) {
         super(errorAttributes, resourceProperties, applicationContext);
         this.setMessageWriters(codecConfigurer.getWriters());
+        this.errorAttributes = errorAttributes;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = codecConfigurer.getWriters().stream()
+                .filter(writer -> writer instanceof EncoderHttpMessageWriter)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(encoder -> encoder instanceof AbstractJackson2Encoder)
+                .map(encoder -> ((AbstractJackson2Encoder) encoder).getObjectMapper())
+                .findFirst()
+                .orElse(null);
     }
 
     //nao importa o tipo de protocolo, aceita todos os métodos HTPP
@@ -46,18 +76,61 @@ public class GlobalExceptionHandler extends AbstractErrorWebExceptionHandler{
     }
 
     private Mono<ServerResponse> formatErrorResponse(ServerRequest request) {
-        String query = request.uri().getQuery();
-        ErrorAttributeOptions errorAttributeOptions = isTraceEnabled(request)
+        Throwable error = errorAttributes.getError(request);
+        boolean traceEnabled = isTraceEnabled(request);
+        String templateKey = !traceEnabled && objectMapper != null && error instanceof StacklessResponseStatusException
+                ? error.getClass().getName() + error.getMessage() : null;
+        ErrorBodyTemplate template = templateKey == null ? null : templates.get(templateKey);
+        if (template != null) {
+            return renderTemplate(request, ((StacklessResponseStatusException) error).getStatus(), error, template);
+        }
+
+        ErrorAttributeOptions errorAttributeOptions = traceEnabled
                 ? ErrorAttributeOptions.of(Include.STACK_TRACE) : defaults();
 
         Map<String, Object> errorAttributesMap = getErrorAttributes(request, errorAttributeOptions);
         int status = (int) Optional.ofNullable(errorAttributesMap.get("status")).orElse(500);
+        if (templateKey != null && templates.size() < MAX_TEMPLATES) {
+            cacheTemplate(templateKey, errorAttributesMap);
+        }
+        countError(error, status);
         return ServerResponse
                 .status(status)
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(BodyInserters.fromValue(errorAttributesMap));
     }
 
+    //caminho rápido: sem mapa de atributos e sem passar pelo codec, só timestamp, path e requestId são escritos
+    private Mono<ServerResponse> renderTemplate(ServerRequest request, HttpStatus status, Throwable error,
+                                                ErrorBodyTemplate template) {
+        countError(error, status.value());
+        String path = request.path();
+        String requestId = request.exchange().getRequest().getId();
+        return ServerResponse
+                .status(status)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body((message, context) -> message.writeWith(Mono.fromSupplier(() -> {
+                    DataBuffer body = template.render(message.bufferFactory(), new Date(), path, requestId);
+                    message.getHeaders().setContentLength(body.readableByteCount());
+                    return body;
+                })));
+    }
+
+    private void cacheTemplate(String templateKey, Map<String, Object> errorAttributesMap) {
+        try {
+            templates.putIfAbsent(templateKey, ErrorBodyTemplate.of(errorAttributesMap, objectMapper));
+        } catch (JsonProcessingException e) {
+            log.warn("Could not pre-render the error body for {}", templateKey, e);
+        }
+    }
+
+    private void countError(Throwable error, int status) {
+        meterRegistry.counter(ERRORS_METRIC,
+                "status", String.valueOf(status),
+                "exception", error == null ? "None" : error.getClass().getSimpleName())
+                .increment();
+    }
+
 //já existe um método para verificar se o trace existe
 //    private boolean isTraceEnabled(String query) {
 //        return !StringUtils.isEmpty(query) && query.contains("trace=true");
@@ -0,0 +1,19 @@
+package com.br.springwebflux.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+//erros esperados com mensagem fixa (404, 409, 412...): o stack trace não ajuda ninguém
+//e montar ele numa pipeline reativa é a parte mais cara de lançar a exceção
+//o GlobalExceptionHandler responde essas exceções com o corpo JSON pré-renderizado
+public class StacklessResponseStatusException extends ResponseStatusException {
+
+    public StacklessResponseStatusException(HttpStatus status, String reason) {
+        super(status, reason);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
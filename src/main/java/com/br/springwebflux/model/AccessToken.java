@@ -0,0 +1,16 @@
+package com.br.springwebflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class AccessToken {
+
+    private String accessToken;
+    private String tokenType;
+    //segundos até o token expirar
+    private long expiresIn;
+}
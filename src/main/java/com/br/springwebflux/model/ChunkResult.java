@@ -0,0 +1,24 @@
+package com.br.springwebflux.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ChunkResult {
+
+    //posição do lote no stream, começando em 0
+    private long chunk;
+    private int size;
+    private int inserted;
+    private Long firstId;
+    private Long lastId;
+    //preenchido quando o lote foi rejeitado e nada dele foi gravado
+    private String error;
+}
@@ -2,6 +2,7 @@ package com.br.springwebflux.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.relational.core.mapping.Table;
 
 import javax.validation.constraints.NotEmpty;
@@ -20,4 +21,7 @@ public class Movie {
     @NotNull
     @NotEmpty(message = "title of the movie cannot be null")
     private String title;
+    //incrementada a cada UPDATE, usada como ETag do filme
+    @Version
+    private Long version;
 }
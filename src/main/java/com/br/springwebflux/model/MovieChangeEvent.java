@@ -0,0 +1,32 @@
+package com.br.springwebflux.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//evento do feed GET /movies/changes, vem do NOTIFY do trigger de db/movie-changes.sql
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieChangeEvent {
+
+    public static final String CREATE = "create";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+    //eventos foram perdidos (cliente lento, reconexão com o banco, TRUNCATE): recarregue a listagem
+    public static final String RESYNC = "resync";
+
+    private String type;
+    private Long id;
+    //só em create e update
+    private String title;
+    private Long version;
+
+    public static MovieChangeEvent resync() {
+        return MovieChangeEvent.builder().type(RESYNC).build();
+    }
+}
@@ -0,0 +1,27 @@
+package com.br.springwebflux.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//um item da resposta do GET /movies?ids=, na ordem dos ids pedidos
+//id que não existe vem com missing=true e sem movie
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovieLookup {
+
+    private Long id;
+    private Movie movie;
+    private Boolean missing;
+
+    public static MovieLookup found(Movie movie) {
+        return new MovieLookup(movie.getId(), movie, null);
+    }
+
+    public static MovieLookup missing(Long id) {
+        return new MovieLookup(id, null, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,17 @@
+package com.br.springwebflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MoviePage {
+
+    private List<Movie> content;
+    //id do último filme da página, null quando não existe próxima página
+    private Long nextCursor;
+}
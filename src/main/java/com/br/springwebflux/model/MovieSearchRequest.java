@@ -0,0 +1,20 @@
+package com.br.springwebflux.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+//parâmetros da rota RSocket movies.search, os mesmos do GET /movies/search
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class MovieSearchRequest {
+
+    private String q;
+    //exact, prefix (padrão) ou contains
+    private String mode;
+    private Long after;
+    private Integer limit;
+}
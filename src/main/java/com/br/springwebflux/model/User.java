@@ -11,6 +11,10 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Data
@@ -19,6 +23,11 @@ import java.util.stream.Collectors;
 @Table("user_table")
 public class User implements UserDetails {
 
+    //o Spring Security pede as permissões várias vezes por requisição: cada combinação
+    //(ex.: "ROLE_USER,ROLE_ADMIN") é quebrada uma vez só e a lista imutável é compartilhada
+    //entre todos os usuários; são poucas combinações, por isso os mapas não têm limite
+    private static final Map<String, List<GrantedAuthority>> AUTHORITY_LISTS = new ConcurrentHashMap<>();
+    private static final Map<String, GrantedAuthority> AUTHORITIES = new ConcurrentHashMap<>();
 
     @Id
     private Long id;
@@ -29,9 +38,18 @@ public class User implements UserDetails {
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return Arrays.stream(authorities.split(","))
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+        if (authorities == null) {
+            return Collections.emptyList();
+        }
+        return AUTHORITY_LISTS.computeIfAbsent(authorities, User::parseAuthorities);
+    }
+
+    private static List<GrantedAuthority> parseAuthorities(String authorities) {
+        return Collections.unmodifiableList(Arrays.stream(authorities.split(","))
+                .map(String::trim)
+                .filter(authority -> !authority.isEmpty())
+                .map(authority -> AUTHORITIES.computeIfAbsent(authority, SimpleGrantedAuthority::new))
+                .collect(Collectors.toList()));
     }
 
     @Override
@@ -1,10 +1,53 @@
 package com.br.springwebflux.repository;
 
 import com.br.springwebflux.model.Movie;
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-public interface MovieRepository extends ReactiveCrudRepository<Movie, Long> {
+public interface MovieRepository extends ReactiveCrudRepository<Movie, Long>, MovieRepositoryCustom {
 
+    //títulos podem se repetir, então fica com o mais antigo em vez de quebrar o Mono
+    @Query("SELECT * FROM movie WHERE title = :title ORDER BY id LIMIT 1")
     Mono<Movie> findMovieByTitle(String title);
+
+    //usam os índices em lower(title): btree para igualdade e prefixo, trigram para "contém"
+    @Query("SELECT * FROM movie WHERE lower(title) = lower(:title) AND id > :after ORDER BY id LIMIT :limit")
+    Flux<Movie> searchByTitleIgnoringCase(String title, Long after, int limit);
+
+    //o driver reaproveita o prepared statement e, depois de 5 execuções, o Postgres pode trocar para o plano
+    //genérico, que não conhece o padrão e percorre a pkey em ordem filtrando a tabela inteira;
+    //ordenar por id + 0 tira esse caminho, a busca segue pelos índices de título e ordena só o que casou
+    @Query("SELECT * FROM movie WHERE lower(title) LIKE lower(:pattern) AND id > :after ORDER BY id + 0 LIMIT :limit")
+    Flux<Movie> searchByTitleLike(String pattern, Long after, int limit);
+
+    //um único statement para qualquer quantidade de ids: o array vai num parâmetro só,
+    //diferente do findAllById, que monta um IN ($1, $2, ...) com texto diferente para cada tamanho
+    @Query("SELECT * FROM movie WHERE id = ANY(:ids)")
+    Flux<Movie> findAllByIdIn(Long[] ids);
+
+    //paginação por keyset: usa o índice da primary key, sem OFFSET
+    @Query("SELECT * FROM movie WHERE id > :after ORDER BY id LIMIT :limit")
+    Flux<Movie> findPageAfter(Long after, int limit);
+
+    //retornam a nova versão (a ETag da resposta do PUT), vazio quando nenhuma linha foi alterada
+    @Query("UPDATE movie SET title = :title, version = version + 1 WHERE id = :id RETURNING version")
+    Mono<Long> updateTitle(Long id, String title);
+
+    //só atualiza se ninguém alterou o filme desde a versão que o cliente leu
+    @Query("UPDATE movie SET title = :title, version = version + 1 WHERE id = :id AND version = :version RETURNING version")
+    Mono<Long> updateTitleIfVersion(Long id, String title, Long version);
+
+    //retorna a quantidade de linhas afetadas, 0 quando o filme não existe
+    @Modifying
+    @Query("DELETE FROM movie WHERE id = :id")
+    Mono<Integer> deleteMovieById(Long id);
+
+    //mantido pelo trigger de db/movie-changes.sql, muda a cada escrita na tabela movie
+    //soma dos shards: o SELECT vê um snapshot só, então a soma nunca mistura transações pela metade
+    //SUM de bigint é numeric no Postgres; sem nenhuma linha o resultado é vazio, como na versão de uma linha
+    @Query("SELECT SUM(counter)::BIGINT FROM movie_changes HAVING COUNT(*) > 0")
+    Mono<Long> findChangeCounter();
 }
@@ -0,0 +1,14 @@
+package com.br.springwebflux.repository;
+
+import com.br.springwebflux.model.Movie;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+//consultas que precisam de controle sobre o Statement do R2DBC
+public interface MovieRepositoryCustom {
+
+    Flux<Movie> streamAfter(long after, int fetchSize);
+
+    Flux<Movie> insertAll(List<Movie> movies);
+}
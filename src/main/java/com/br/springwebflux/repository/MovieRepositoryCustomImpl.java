@@ -0,0 +1,48 @@
+package com.br.springwebflux.repository;
+
+import com.br.springwebflux.model.Movie;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.data.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class MovieRepositoryCustomImpl implements MovieRepositoryCustom {
+
+    private final DatabaseClient databaseClient;
+
+    //com fetchSize o driver lê o cursor em lotes conforme a demanda,
+    //em vez de trazer a tabela inteira de uma vez
+    @Override
+    public Flux<Movie> streamAfter(long after, int fetchSize) {
+        return databaseClient.execute("SELECT * FROM movie WHERE id > :after ORDER BY id")
+                .bind("after", after)
+                .filter(statement -> statement.fetchSize(fetchSize))
+                .as(Movie.class)
+                .fetch()
+                .all();
+    }
+
+    //um único INSERT com várias linhas: o lote inteiro custa um round trip
+    @Override
+    public Flux<Movie> insertAll(List<Movie> movies) {
+        if (movies.isEmpty()) {
+            return Flux.empty();
+        }
+        StringBuilder sql = new StringBuilder("INSERT INTO movie (title) VALUES ");
+        for (int i = 0; i < movies.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("($").append(i + 1).append(')');
+        }
+        sql.append(" RETURNING *");
+
+        GenericExecuteSpec spec = databaseClient.execute(sql.toString());
+        for (int i = 0; i < movies.size(); i++) {
+            spec = spec.bind(i, movies.get(i).getTitle());
+        }
+        return spec.as(Movie.class)
+                .fetch()
+                .all();
+    }
+}
@@ -0,0 +1,107 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.model.Movie;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+//cache local na frente do banco para findById e findByTitle
+//Optional.empty() guarda um "não existe" (cache negativo) e null significa que não está em cache
+@Component
+public class MovieCache {
+
+    private final boolean enabled;
+    private final Cache<Long, Optional<Movie>> byId;
+    //o título aponta para o id; o filme em si fica só no byId, então invalidar o id basta
+    private final Cache<String, Optional<Long>> byTitle;
+    //incrementado a cada escrita, evita que uma leitura antiga grave valor velho no cache
+    private final AtomicLong generation = new AtomicLong();
+
+    public MovieCache(MovieProperties movieProperties, MeterRegistry meterRegistry) {
+        MovieProperties.Cache properties = movieProperties.getCache();
+        this.enabled = properties.isEnabled();
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(MovieCache.<Long, Movie>expiry(properties.getTtl(), properties.getNegativeTtl()))
+                .recordStats()
+                .build();
+        this.byTitle = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(MovieCache.<String, Long>expiry(properties.getTtl(), properties.getNegativeTtl()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "movies.by-id");
+        CaffeineCacheMetrics.monitor(meterRegistry, byTitle, "movies.by-title");
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    public Optional<Movie> getById(Long id) {
+        return enabled ? byId.getIfPresent(id) : null;
+    }
+
+    public Optional<Long> getIdByTitle(String title) {
+        return enabled ? byTitle.getIfPresent(title) : null;
+    }
+
+    //generation é o valor lido antes da consulta ao banco
+    public void putById(Long id, Optional<Movie> movie, long generation) {
+        if (enabled) {
+            byId.put(id, movie);
+            if (this.generation.get() != generation) {
+                byId.invalidate(id);
+            }
+        }
+    }
+
+    public void putByTitle(String title, Optional<Movie> movie, long generation) {
+        if (enabled) {
+            byTitle.put(title, movie.map(Movie::getId));
+            movie.ifPresent(found -> byId.put(found.getId(), movie));
+            if (this.generation.get() != generation) {
+                byTitle.invalidate(title);
+                movie.ifPresent(found -> byId.invalidate(found.getId()));
+            }
+        }
+    }
+
+    //chamado depois que a escrita terminou no banco; title pode ser null
+    public void invalidate(Long id, String title) {
+        generation.incrementAndGet();
+        if (id != null) {
+            byId.invalidate(id);
+        }
+        if (title != null) {
+            byTitle.invalidate(title);
+        }
+    }
+
+    private static <K, V> Expiry<K, Optional<V>> expiry(Duration ttl, Duration negativeTtl) {
+        return new Expiry<K, Optional<V>>() {
+            @Override
+            public long expireAfterCreate(K key, Optional<V> value, long currentTime) {
+                return (value.isPresent() ? ttl : negativeTtl).toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(K key, Optional<V> value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(K key, Optional<V> value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
@@ -0,0 +1,154 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.model.MovieChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//feed de alterações dos filmes: uma única conexão com LISTEN movie_changes, compartilhada por todos os clientes
+//a conexão é aberta com o primeiro cliente e fechada alguns segundos depois que o último sai
+//cada cliente tem o seu buffer; quem não acompanha perde os eventos pendentes e recebe um resync
+@Slf4j
+@Component
+public class MovieChangeFeed {
+
+    static final String CHANNEL = "movie_changes";
+    //evita fechar e reabrir a conexão quando o único cliente cai num resync ou reconecta logo em seguida
+    private static final Duration DISCONNECT_GRACE = Duration.ofSeconds(5);
+
+    private final Flux<MovieChangeEvent> shared;
+    private final int bufferSize;
+    private final Duration heartbeat;
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final Counter overflowResyncs;
+
+    @Autowired
+    public MovieChangeFeed(ConnectionPool connectionPool, ObjectMapper objectMapper,
+                           MovieProperties movieProperties, MeterRegistry meterRegistry) {
+        this(listen(connectionPool.unwrap(), objectMapper, movieProperties.getChanges(), meterRegistry),
+                movieProperties, meterRegistry);
+    }
+
+    MovieChangeFeed(Flux<MovieChangeEvent> source, MovieProperties movieProperties, MeterRegistry meterRegistry) {
+        MovieProperties.Changes properties = movieProperties.getChanges();
+        this.shared = source.publish().refCount(1, DISCONNECT_GRACE);
+        this.bufferSize = properties.getBufferSize();
+        this.heartbeat = properties.getHeartbeat();
+        this.overflowResyncs = resyncCounter(meterRegistry, "overflow");
+        meterRegistry.gauge("movies.changes.subscribers", subscribers);
+    }
+
+    //o buffer pede tudo ao publish, então um cliente lento não segura os outros
+    //quando enche, o que já estava no buffer ainda é entregue; depois vem o resync e a assinatura é refeita
+    //os eventos que chegaram nesse meio tempo se perdem, por isso o resync
+    public Flux<MovieChangeEvent> changes() {
+        return buffered()
+                .doOnSubscribe(subscription -> subscribers.incrementAndGet())
+                .doFinally(signal -> subscribers.decrementAndGet());
+    }
+
+    //um laço plano: cada overflow termina a volta com o resync e o repeat assina de novo,
+    //sem empilhar operadores; o repeat só acontece depois de um overflow, se o feed terminar o cliente termina junto
+    private Flux<MovieChangeEvent> buffered() {
+        return Flux.defer(() -> {
+            AtomicBoolean overflowed = new AtomicBoolean();
+            return shared.onBackpressureBuffer(bufferSize)
+                    .onErrorResume(Exceptions::isOverflow, e -> {
+                        overflowed.set(true);
+                        overflowResyncs.increment();
+                        return Mono.just(MovieChangeEvent.resync());
+                    })
+                    .repeat(() -> overflowed.getAndSet(false));
+        });
+    }
+
+    //ticks para manter a conexão do cliente aberta; sem demanda o tick é descartado
+    public Flux<Long> heartbeats() {
+        return Flux.interval(heartbeat, heartbeat).onBackpressureDrop();
+    }
+
+    //conexão própria, fora do pool: ela fica presa enquanto houver cliente e não pode ser reaproveitada
+    //se cair, reconecta com backoff e avisa resync, já que as notificações do intervalo se perderam
+    private static Flux<MovieChangeEvent> listen(ConnectionFactory connectionFactory, ObjectMapper objectMapper,
+                                                 MovieProperties.Changes properties, MeterRegistry meterRegistry) {
+        Counter reconnectResyncs = resyncCounter(meterRegistry, "reconnect");
+        return Flux.defer(() -> {
+            AtomicBoolean listened = new AtomicBoolean();
+            return Flux.usingWhen(Mono.from(connectionFactory.create()),
+                    connection -> Flux.merge(
+                            notifications(connection).map(notification -> parse(objectMapper, notification)),
+                            listen(connection).thenMany(Flux.defer(() -> {
+                                if (!listened.getAndSet(true)) {
+                                    log.info("Listening to {} notifications", CHANNEL);
+                                    return Flux.empty();
+                                }
+                                log.info("Listening to {} notifications again, sending resync", CHANNEL);
+                                reconnectResyncs.increment();
+                                return Flux.just(MovieChangeEvent.resync());
+                            })))
+                            //o fluxo de notificações termina quando a conexão fecha
+                            .concatWith(Flux.error(() -> new IOException("connection listening to " + CHANNEL + " was closed"))),
+                    Connection::close)
+                    .retryWhen(reconnectBackoff(properties));
+        });
+    }
+
+    //transientErrors: a conexão que voltou a entregar eventos zera as tentativas,
+    //então cada queda recomeça do atraso mínimo em vez de herdar o backoff das quedas anteriores
+    static RetryBackoffSpec reconnectBackoff(MovieProperties.Changes properties) {
+        return Retry.backoff(Long.MAX_VALUE, properties.getMinReconnectDelay())
+                .maxBackoff(properties.getMaxReconnectDelay())
+                .transientErrors(true)
+                .doBeforeRetry(signal -> log.warn("Lost the connection listening to {}, reconnecting (attempt {})",
+                        CHANNEL, signal.totalRetriesInARow() + 1, signal.failure()));
+    }
+
+    private static Flux<Notification> notifications(Connection connection) {
+        if (!(connection instanceof PostgresqlConnection)) {
+            return Flux.error(new IllegalStateException("the movie change feed needs a PostgreSQL connection"));
+        }
+        return ((PostgresqlConnection) connection).getNotifications();
+    }
+
+    private static Mono<Void> listen(Connection connection) {
+        return Flux.from(connection.createStatement("LISTEN " + CHANNEL).execute())
+                .flatMap(Result::getRowsUpdated)
+                .then();
+    }
+
+    //payload inválido não derruba o feed: vira resync e o cliente recarrega
+    static MovieChangeEvent parse(ObjectMapper objectMapper, Notification notification) {
+        try {
+            return objectMapper.readValue(notification.getParameter(), MovieChangeEvent.class);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read {} notification '{}'", CHANNEL, notification.getParameter(), e);
+            return MovieChangeEvent.resync();
+        }
+    }
+
+    private static Counter resyncCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("movies.changes.resyncs")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
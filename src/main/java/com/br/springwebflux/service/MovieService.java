@@ -1,6 +1,11 @@
 package com.br.springwebflux.service;
 
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import com.br.springwebflux.model.ChunkResult;
 import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieLookup;
+import com.br.springwebflux.model.MoviePage;
 import com.br.springwebflux.repository.MovieRepository;
 import io.netty.util.internal.StringUtil;
 import lombok.AllArgsConstructor;
@@ -12,63 +17,359 @@ import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Mono;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 @Service
 @AllArgsConstructor
 @Slf4j
 public class MovieService {
 
+    //reactor.flow.duration{flow="movies.service", method, status} mede cada operação do subscribe até o término
+    private static final String SERVICE_FLOW = "movies.service";
+
     private final MovieRepository movieRepository;
+    private final MovieProperties movieProperties;
+    private final MovieCache movieCache;
+    private final SingleFlight<Long, Optional<Movie>> findByIdFlights = new SingleFlight<>();
+    private final SingleFlight<String, Optional<Movie>> findByTitleFlights = new SingleFlight<>();
+
+    //versão da tabela inteira: enquanto não muda, nenhuma listagem muda
+    //vazio quando o contador não existe (schema sem db/movie-changes.sql)
+    public Mono<Long> changeCounter(){
+        return movieRepository.findChangeCounter()
+                .name(SERVICE_FLOW).tag("method", "changeCounter").metrics();
+    }
+
+    //mesmas validações do findPage/search, para o controller rodar antes do atalho de 304:
+    //parâmetro inválido é 400 mesmo quando o If-None-Match casa com a ETag atual
+    public void validatePage(Integer limit){
+        resolvePageSize(limit);
+    }
+
+    public void validateSearch(String query, String mode, Integer limit){
+        TitleSearchMode searchMode = resolveSearchMode(mode);
+        resolvePageSize(limit);
+        validateSearchQuery(query, searchMode);
+    }
+
+    //busca um registro a mais que o limit para saber se existe próxima página
+    public Mono<MoviePage> findPage(Long after, Integer limit){
+        return Mono.defer(() -> {
+            int pageSize = resolvePageSize(limit);
+            long cursor = after == null || after < 0 ? 0L : after;
+            return movieRepository.findPageAfter(cursor, pageSize + 1)
+                    .collectList()
+                    .map(movies -> toPage(movies, pageSize));
+        }).name(SERVICE_FLOW).tag("method", "findPage").metrics();
+    }
+
+    //limitRate faz a demanda do cliente virar pedidos do tamanho do fetchSize,
+    //assim um consumidor lento segura a leitura do banco em vez de acumular na memória
+    public Flux<Movie> stream(Long after){
+        int fetchSize = movieProperties.getStream().getFetchSize();
+        long cursor = after == null || after < 0 ? 0L : after;
+        return movieRepository.streamAfter(cursor, fetchSize)
+                .limitRate(fetchSize)
+                .name(SERVICE_FLOW).tag("method", "stream").metrics();
+    }
+
+    //busca paginada por título, sem diferenciar maiúsculas; mode é exact, prefix ou contains
+    public Mono<MoviePage> search(String query, String mode, Long after, Integer limit){
+        return Mono.defer(() -> {
+            TitleSearchMode searchMode = resolveSearchMode(mode);
+            int pageSize = resolvePageSize(limit);
+            long cursor = after == null || after < 0 ? 0L : after;
+            validateSearchQuery(query, searchMode);
+            return searchByTitle(query, searchMode, cursor, pageSize + 1)
+                    .collectList()
+                    .map(movies -> toPage(movies, pageSize));
+        }).name(SERVICE_FLOW).tag("method", "search").metrics();
+    }
+
+    private Flux<Movie> searchByTitle(String query, TitleSearchMode mode, long after, int limit){
+        switch (mode){
+            case EXACT:
+                return movieRepository.searchByTitleIgnoringCase(query, after, limit);
+            case CONTAINS:
+                return movieRepository.searchByTitleLike("%" + escapeLike(query) + "%", after, limit);
+            default:
+                return movieRepository.searchByTitleLike(escapeLike(query) + "%", after, limit);
+        }
+    }
+
+    private TitleSearchMode resolveSearchMode(String mode){
+        if(mode == null){
+            return TitleSearchMode.PREFIX;
+        }
+        try {
+            return TitleSearchMode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST, "mode must be one of exact, prefix or contains");
+        }
+    }
+
+    //com menos de 3 letras o índice trigram não ajuda e o "contém" vira leitura da tabela inteira
+    private void validateSearchQuery(String query, TitleSearchMode mode){
+        if(StringUtil.isNullOrEmpty(query)){
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST, "q cannot be empty");
+        }
+        if(mode == TitleSearchMode.CONTAINS && query.length() < movieProperties.getSearch().getMinContainsLength()){
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "q must have at least " + movieProperties.getSearch().getMinContainsLength() + " characters to search with contains");
+        }
+    }
+
+    //%, _ e \ digitados pelo cliente são literais, não curingas do LIKE
+    private String escapeLike(String query){
+        return query.replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_");
+    }
+
+    private int resolvePageSize(Integer limit){
+        if(limit == null){
+            return Math.min(movieProperties.getPage().getDefaultSize(), movieProperties.getPage().getMaxSize());
+        }
+        if(limit < 1){
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be greater than zero");
+        }
+        return Math.min(limit, movieProperties.getPage().getMaxSize());
+    }
 
-    public Flux<Movie> findAll(){
-        return movieRepository.findAll();
+    private MoviePage toPage(List<Movie> movies, int pageSize){
+        if(movies.size() <= pageSize){
+            return new MoviePage(movies, null);
+        }
+        List<Movie> content = movies.subList(0, pageSize);
+        return new MoviePage(content, content.get(pageSize - 1).getId());
     }
 
+    //defer para consultar o cache no momento do subscribe e não na montagem do Mono
     public Mono<Movie> findById(Long id){
-       return movieRepository.findById(id)
-               .switchIfEmpty(monoResponseStatusNotFoundException());
+        return Mono.defer(() -> {
+            Optional<Movie> cached = movieCache.getById(id);
+            if(cached != null){
+                return cached.map(Mono::just).orElseGet(this::monoResponseStatusNotFoundException);
+            }
+            return findByIdFlights.execute(id, () -> {
+                long generation = movieCache.generation();
+                return movieRepository.findById(id)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .doOnNext(movie -> movieCache.putById(id, movie, generation));
+            }).flatMap(movie -> movie.map(Mono::just).orElseGet(this::monoResponseStatusNotFoundException));
+        }).name(SERVICE_FLOW).tag("method", "findById").metrics();
+    }
+
+    //cache primeiro; só os ids que faltam vão ao banco, todos numa única consulta
+    //a resposta segue a ordem dos ids pedidos, sem repetição, e marca os que não existem
+    //como no findById, um id que não existe entra no cache negativo
+    public Flux<MovieLookup> findAllById(List<Long> ids){
+        return Mono.fromCallable(() -> resolveLookupIds(ids))
+                .flatMapMany(distinctIds -> {
+                    Map<Long, Optional<Movie>> found = new HashMap<>();
+                    List<Long> misses = new ArrayList<>();
+                    for(Long id : distinctIds){
+                        Optional<Movie> cached = movieCache.getById(id);
+                        if(cached != null){
+                            found.put(id, cached);
+                        } else {
+                            misses.add(id);
+                        }
+                    }
+                    if(misses.isEmpty()){
+                        return Flux.fromIterable(distinctIds).map(id -> toLookup(id, found.get(id)));
+                    }
+                    long generation = movieCache.generation();
+                    return movieRepository.findAllByIdIn(misses.toArray(new Long[0]))
+                            .collectMap(Movie::getId)
+                            .flatMapMany(loaded -> {
+                                for(Long id : misses){
+                                    Optional<Movie> movie = Optional.ofNullable(loaded.get(id));
+                                    movieCache.putById(id, movie, generation);
+                                    found.put(id, movie);
+                                }
+                                return Flux.fromIterable(distinctIds).map(id -> toLookup(id, found.get(id)));
+                            });
+                })
+                .name(SERVICE_FLOW).tag("method", "findAllById").metrics();
+    }
 
+    private List<Long> resolveLookupIds(List<Long> ids){
+        Set<Long> distinctIds = new LinkedHashSet<>();
+        if(ids != null){
+            for(Long id : ids){
+                if(id != null){
+                    distinctIds.add(id);
+                }
+            }
+        }
+        if(distinctIds.isEmpty()){
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST, "ids cannot be empty");
+        }
+        int maxIds = movieProperties.getLookup().getMaxIds();
+        if(distinctIds.size() > maxIds){
+            throw new StacklessResponseStatusException(HttpStatus.BAD_REQUEST, "ids must have at most " + maxIds + " values");
+        }
+        return new ArrayList<>(distinctIds);
     }
 
+    private MovieLookup toLookup(Long id, Optional<Movie> movie){
+        return movie.map(MovieLookup::found).orElseGet(() -> MovieLookup.missing(id));
+    }
+
+    //o cache de título guarda só o id; se o filme do id mudou de título, vai ao banco
     public Mono<Movie> findByTitle(String title){
-        return movieRepository.findMovieByTitle(title);
+        return Mono.defer(() -> {
+            Optional<Long> cachedId = movieCache.getIdByTitle(title);
+            if(cachedId != null){
+                if(!cachedId.isPresent()){
+                    return Mono.empty();
+                }
+                Optional<Movie> cached = movieCache.getById(cachedId.get());
+                if(cached != null && cached.isPresent() && title.equals(cached.get().getTitle())){
+                    return Mono.just(cached.get());
+                }
+            }
+            return findByTitleFlights.execute(title, () -> {
+                long generation = movieCache.generation();
+                return movieRepository.findMovieByTitle(title)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .doOnNext(movie -> movieCache.putByTitle(title, movie, generation));
+            }).flatMap(movie -> Mono.justOrEmpty(movie));
+        }).name(SERVICE_FLOW).tag("method", "findByTitle").metrics();
     }
 
+    //com @Version o Spring Data decide INSERT/UPDATE pela versão: id e versão vindos do cliente
+    //virariam UPDATE de outro filme ou INSERT com id explícito, então o POST sempre cria um filme novo
     public Mono<Movie> save(Movie movie) {
-        return movieRepository.save(movie);
+        return movieRepository.save(movie.withId(null).withVersion(null))
+                .doOnNext(this::invalidateCache)
+                .name(SERVICE_FLOW).tag("method", "save").metrics();
+    }
+
+    //um id novo pode ter um 404 em cache, e o título pode ter um "não existe" em cache
+    private void invalidateCache(Movie movie){
+        movieCache.invalidate(movie.getId(), movie.getTitle());
+    }
+
+    //invalida antes da resposta chegar ao cliente; no cancel a escrita pode ter sido feita mesmo assim
+    private <T> Mono<T> invalidatingCache(Mono<T> write, Long id, String title){
+        return write.doOnTerminate(() -> movieCache.invalidate(id, title))
+                .doOnCancel(() -> movieCache.invalidate(id, title));
     }
 
     //@Valid nao funciona para Lista de objetos
-    //doOnNext executa uma ação para cada um dos itens retornados no Flux
+    //valida a lista inteira antes do primeiro INSERT, depois grava em lotes de chunkSize
+    //concatMap mantém a ordem e só um lote em andamento por vez
     @Transactional
     public Flux<Movie> saveAll(List<Movie> movies) {
-        return movieRepository.saveAll(movies)
-                .doOnNext(this::throwResponseStatusExceptionWhenEmptyName);
+        return Mono.fromRunnable(() -> throwResponseStatusExceptionWhenEmptyName(movies))
+                .thenMany(Flux.fromIterable(movies))
+                .buffer(movieProperties.getBatch().getChunkSize())
+                .concatMap(movieRepository::insertAll)
+                .doOnNext(this::invalidateCache)
+                .name(SERVICE_FLOW).tag("method", "saveAll").metrics();
     }
 
-    private void throwResponseStatusExceptionWhenEmptyName(Movie movie){
-        if(StringUtil.isNullOrEmpty(movie.getTitle())){
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,"Invalid title");
+    //importação em streaming: o corpo é lido, validado e gravado um lote por vez,
+    //então a memória usada depende do chunkSize e não do tamanho do arquivo
+    //um lote inválido é reportado e pulado, os outros continuam sendo gravados
+    public Flux<ChunkResult> ingest(Flux<Movie> movies) {
+        return movies.buffer(movieProperties.getBatch().getChunkSize())
+                .index()
+                .concatMap(chunk -> ingestChunk(chunk.getT1(), chunk.getT2()), 1)
+                .name(SERVICE_FLOW).tag("method", "ingest").metrics();
+    }
+
+    private Mono<ChunkResult> ingestChunk(long index, List<Movie> movies) {
+        ChunkResult.ChunkResultBuilder result = ChunkResult.builder()
+                .chunk(index)
+                .size(movies.size());
+        List<Long> invalidIndexes = findInvalidTitles(movies, index * movieProperties.getBatch().getChunkSize());
+        if(!invalidIndexes.isEmpty()){
+            return Mono.just(result.error(invalidTitleMessage(invalidIndexes)).build());
+        }
+        return movieRepository.insertAll(movies)
+                .doOnNext(this::invalidateCache)
+                .collectList()
+                .map(saved -> result.inserted(saved.size())
+                        .firstId(saved.isEmpty() ? null : saved.get(0).getId())
+                        .lastId(saved.isEmpty() ? null : saved.get(saved.size() - 1).getId())
+                        .build());
+    }
+
+    private void throwResponseStatusExceptionWhenEmptyName(List<Movie> movies){
+        List<Long> invalidIndexes = findInvalidTitles(movies, 0);
+        if(!invalidIndexes.isEmpty()){
+            //os índices mudam a cada payload: cada mensagem viraria um template novo no GlobalExceptionHandler
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, invalidTitleMessage(invalidIndexes));
+        }
+    }
+
+    //offset é a posição do primeiro filme da lista dentro do payload inteiro
+    private List<Long> findInvalidTitles(List<Movie> movies, long offset){
+        List<Long> invalidIndexes = new ArrayList<>();
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            if(movie == null || StringUtil.isNullOrEmpty(movie.getTitle())){
+                invalidIndexes.add(offset + i);
+            }
         }
+        return invalidIndexes;
     }
 
-    public Mono<Void> update(Movie movie) {
-        return findById(movie.getId())
-                .flatMap(movieRepository::save).then();
+    private String invalidTitleMessage(List<Long> invalidIndexes){
+        return "Invalid title at indexes " + invalidIndexes;
+    }
+
+    //um único UPDATE/DELETE por id, sem buscar o filme antes
+    //quando o filme vem com versão o UPDATE é condicional, sem lock de linha
+    //retorna o filme com a versão nova, que o controller devolve como ETag
+    public Mono<Movie> update(Movie movie) {
+        if(movie.getVersion() == null){
+            return invalidatingCache(movieRepository.updateTitle(movie.getId(), movie.getTitle())
+                    .map(movie::withVersion)
+                    .switchIfEmpty(Mono.defer(this::monoResponseStatusNotFoundException)), movie.getId(), movie.getTitle())
+                .name(SERVICE_FLOW).tag("method", "update").metrics();
+        }
+        return invalidatingCache(movieRepository.updateTitleIfVersion(movie.getId(), movie.getTitle(), movie.getVersion())
+                .map(movie::withVersion)
+                .switchIfEmpty(Mono.defer(() -> conflictOrNotFound(movie.getId()))),
+                movie.getId(), movie.getTitle())
+                .name(SERVICE_FLOW).tag("method", "update").metrics();
+    }
 
+    //só chega aqui quando o UPDATE condicional falhou, então o custo extra fica no caminho de erro
+    private <T> Mono<T> conflictOrNotFound(Long id){
+        return movieRepository.existsById(id)
+                .flatMap(exists -> exists ? monoResponseStatusConflictException() : monoResponseStatusNotFoundException());
     }
 
     public Mono<Void> delete(Long id) {
-        return findById(id)
-                .switchIfEmpty(monoResponseStatusNotFoundException())
-                .flatMap(movieRepository::delete)
-                ;
+        return invalidatingCache(movieRepository.deleteMovieById(id)
+                .flatMap(this::notFoundWhenNoRowsAffected), id, null)
+                .name(SERVICE_FLOW).tag("method", "delete").metrics();
     }
 
+    private Mono<Void> notFoundWhenNoRowsAffected(Integer rowsAffected){
+        return rowsAffected == 0 ? monoResponseStatusNotFoundException() : Mono.empty();
+    }
 
     public <T> Mono<T> monoResponseStatusNotFoundException(){
-        return Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND,"movie not found"));
+        return Mono.error(new StacklessResponseStatusException(HttpStatus.NOT_FOUND,"movie not found"));
+    }
+
+    public <T> Mono<T> monoResponseStatusConflictException(){
+        return Mono.error(new StacklessResponseStatusException(HttpStatus.CONFLICT,"movie was modified by another request"));
     }
 
 
@@ -0,0 +1,34 @@
+package com.br.springwebflux.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+//quem pede a mesma chave enquanto a primeira busca não terminou recebe o mesmo Mono,
+//então N requisições simultâneas geram uma única consulta ao banco
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            Mono<V> running = inFlight.get(key);
+            if (running != null) {
+                return running;
+            }
+            //libera a chave antes do resultado chegar aos assinantes, assim um retry feito
+            //no onError já dispara uma busca nova; remove(key, value) não apaga uma busca mais nova
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> shared = Mono.defer(loader)
+                    .doOnTerminate(() -> inFlight.remove(key, self.get()))
+                    .doOnCancel(() -> inFlight.remove(key, self.get()))
+                    .cache();
+            self.set(shared);
+            running = inFlight.putIfAbsent(key, shared);
+            return running != null ? running : shared;
+        });
+    }
+}
@@ -0,0 +1,7 @@
+package com.br.springwebflux.service;
+
+public enum TitleSearchMode {
+    EXACT,
+    PREFIX,
+    CONTAINS
+}
@@ -0,0 +1,142 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.AuthProperties;
+import com.br.springwebflux.model.AccessToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+//JWT HS256 escrito à mão: só precisamos assinar e conferir, não vale uma dependência nova
+//a verificação é um HMAC e um parse de JSON, sem banco e sem bcrypt
+@Service
+@ConditionalOnProperty(name = "auth.token.enabled", havingValue = "true")
+public class TokenService {
+
+    public static final String TOKEN_TYPE = "Bearer";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int MIN_SECRET_LENGTH = 32;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+    private final String issuer;
+    private final Duration ttl;
+    private final SecretKeySpec secret;
+    private final ThreadLocal<Mac> macs;
+    private final String encodedHeader;
+
+    @Autowired
+    public TokenService(AuthProperties authProperties, ObjectMapper objectMapper) {
+        this(authProperties.getToken(), objectMapper, Clock.systemUTC());
+    }
+
+    TokenService(AuthProperties.Token token, ObjectMapper objectMapper, Clock clock) {
+        if (token.getSecret() == null || token.getSecret().getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_LENGTH) {
+            throw new IllegalStateException("auth.token.secret must have at least " + MIN_SECRET_LENGTH + " bytes");
+        }
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+        this.issuer = token.getIssuer();
+        this.ttl = token.getTtl();
+        this.secret = new SecretKeySpec(token.getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+        this.encodedHeader = encode(objectMapper.createObjectNode().put("alg", "HS256").put("typ", "JWT"));
+    }
+
+    public AccessToken issue(Authentication authentication) {
+        long now = clock.instant().getEpochSecond();
+        ObjectNode claims = objectMapper.createObjectNode()
+                .put("iss", issuer)
+                .put("sub", authentication.getName())
+                .put("iat", now)
+                .put("exp", now + ttl.getSeconds());
+        authentication.getAuthorities()
+                .forEach(authority -> claims.withArray("authorities").add(authority.getAuthority()));
+        String unsigned = encodedHeader + "." + encode(claims);
+        return new AccessToken(unsigned + "." + ENCODER.encodeToString(sign(unsigned)), TOKEN_TYPE, ttl.getSeconds());
+    }
+
+    public Mono<Authentication> verify(String token) {
+        return Mono.fromCallable(() -> parse(token));
+    }
+
+    private Authentication parse(String token) {
+        String[] parts = token.split("\\.");
+        if (parts.length != 3 || !encodedHeader.equals(parts[0])) {
+            throw new BadCredentialsException("Invalid token");
+        }
+        byte[] signature = decode(parts[2]);
+        if (!MessageDigest.isEqual(signature, sign(parts[0] + "." + parts[1]))) {
+            throw new BadCredentialsException("Invalid token");
+        }
+        JsonNode claims = readClaims(parts[1]);
+        if (!issuer.equals(claims.path("iss").asText())
+                || claims.path("exp").asLong() <= clock.instant().getEpochSecond()
+                || claims.path("sub").asText().isEmpty()) {
+            throw new BadCredentialsException("Invalid token");
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        claims.path("authorities").forEach(authority -> authorities.add(new SimpleGrantedAuthority(authority.asText())));
+        return new UsernamePasswordAuthenticationToken(claims.path("sub").asText(), null, authorities);
+    }
+
+    private JsonNode readClaims(String encodedClaims) {
+        try {
+            return objectMapper.readTree(decode(encodedClaims));
+        } catch (IOException e) {
+            throw new BadCredentialsException("Invalid token", e);
+        }
+    }
+
+    private String encode(JsonNode node) {
+        try {
+            return ENCODER.encodeToString(objectMapper.writeValueAsBytes(node));
+        } catch (IOException e) {
+            throw new IllegalStateException("could not write token", e);
+        }
+    }
+
+    private static byte[] decode(String value) {
+        try {
+            return DECODER.decode(value);
+        } catch (IllegalArgumentException e) {
+            throw new BadCredentialsException("Invalid token", e);
+        }
+    }
+
+    private byte[] sign(String unsigned) {
+        return macs.get().doFinal(unsigned.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(secret);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("could not create " + HMAC_ALGORITHM, e);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.br.springwebflux.service;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+//publicar sempre que a senha ou as permissões de um usuário mudarem;
+//username null significa que todos os usuários devem ser recarregados
+//hoje nenhum código da aplicação altera usuários, então ninguém publica: as mudanças feitas
+//direto no banco só valem quando os caches expiram (auth.user-cache.ttl e auth.credential-cache.ttl)
+@Getter
+public class UserCredentialsChangedEvent extends ApplicationEvent {
+
+    private final String username;
+
+    public UserCredentialsChangedEvent(Object source, String username) {
+        super(source);
+        this.username = username;
+    }
+}
@@ -1,22 +1,88 @@
 package com.br.springwebflux.service;
 
+import com.br.springwebflux.config.AuthProperties;
 import com.br.springwebflux.repository.UserRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.core.userdetails.ReactiveUserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
-@RequiredArgsConstructor
+import java.util.concurrent.atomic.AtomicLong;
+
+//com HTTP Basic toda requisição passa por aqui, então o usuário fica em cache
+//e o banco só é consultado no miss (contador users.repository.queries)
 @Service
 public class UserDetailsServiceImp implements ReactiveUserDetailsService {
 
 
     private final UserRepository userRepository;
+    private final boolean cacheEnabled;
+    private final Cache<String, UserDetails> users;
+    private final SingleFlight<String, UserDetails> lookups = new SingleFlight<>();
+    private final Counter repositoryQueries;
+    //uma busca que começou antes de um evict não pode recolocar a senha antiga no cache
+    private final AtomicLong generation = new AtomicLong();
+
+    public UserDetailsServiceImp(UserRepository userRepository, AuthProperties authProperties, MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.cacheEnabled = authProperties.getUserCache().isEnabled();
+        this.users = Caffeine.newBuilder()
+                .maximumSize(authProperties.getUserCache().getMaxSize())
+                .expireAfterWrite(authProperties.getUserCache().getTtl())
+                .recordStats()
+                .build();
+        this.repositoryQueries = meterRegistry.counter("users.repository.queries");
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+    }
 
     @Override
     public Mono<UserDetails> findByUsername(String username) {
-        return userRepository.findByUsername(username)
-                .cast(UserDetails.class);
+        return Mono.defer(() -> {
+            UserDetails cached = cacheEnabled ? users.getIfPresent(username) : null;
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return lookups.execute(username, () -> {
+                long loadGeneration = generation.get();
+                repositoryQueries.increment();
+                return userRepository.findByUsername(username)
+                        .cast(UserDetails.class)
+                        .doOnNext(user -> cache(username, user, loadGeneration));
+            });
+        });
+    }
+
+    private void cache(String username, UserDetails user, long loadGeneration) {
+        if (cacheEnabled) {
+            users.put(username, user);
+            if (generation.get() != loadGeneration) {
+                users.invalidate(username);
+            }
+        }
+    }
+
+    public void evict(String username) {
+        generation.incrementAndGet();
+        users.invalidate(username);
+    }
+
+    public void evictAll() {
+        generation.incrementAndGet();
+        users.invalidateAll();
+    }
+
+    @EventListener
+    public void onUserCredentialsChanged(UserCredentialsChangedEvent event) {
+        if (event.getUsername() == null) {
+            evictAll();
+        } else {
+            evict(event.getUsername());
+        }
     }
 }
@@ -0,0 +1,52 @@
+-- contador de alterações da tabela movie: toda escrita (INSERT, UPDATE, DELETE, TRUNCATE) soma 1
+-- é a ETag das listagens; como é atualizado na mesma transação, o novo valor só aparece junto com os dados
+-- roda como um único statement (o corpo da função tem ponto e vírgula), o Postgres separa os comandos
+-- o contador é dividido em 16 linhas e a ETag é a soma delas: cada transação incrementa a linha
+-- txid_current() % 16, então o lock de linha (mantido até o COMMIT) só enfileira escritas que caem na
+-- mesma linha, e não todas as escritas em movie; um saveAll longo segura só 1/16 dos outros escritores
+CREATE TABLE IF NOT EXISTS movie_changes (
+    id INT PRIMARY KEY,
+    counter BIGINT NOT NULL
+);
+
+-- bancos criados com a versão de uma linha só (CHECK id = 1): a linha 1 continua sendo um dos shards,
+-- então a soma segue do valor antigo e as ETags já entregues não voltam a valer
+ALTER TABLE movie_changes DROP CONSTRAINT IF EXISTS movie_changes_id_check;
+
+INSERT INTO movie_changes (id, counter) SELECT shard, 0 FROM generate_series(0, 15) AS shard ON CONFLICT (id) DO NOTHING;
+
+CREATE OR REPLACE FUNCTION movie_changes_increment() RETURNS trigger AS $$
+BEGIN
+    UPDATE movie_changes SET counter = counter + 1 WHERE id = txid_current() % 16;
+    -- TRUNCATE não passa pelo trigger de linha: quem acompanha o feed precisa recarregar tudo
+    IF TG_OP = 'TRUNCATE' THEN
+        PERFORM pg_notify('movie_changes', json_build_object('type', 'resync')::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- feed de alterações (GET /movies/changes): uma notificação por linha, entregue só depois do COMMIT
+-- o payload do NOTIFY tem limite de 8000 bytes, o título tem no máximo 255
+CREATE OR REPLACE FUNCTION movie_changes_notify() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('movie_changes', json_build_object('type', 'delete', 'id', OLD.id)::text);
+    ELSE
+        PERFORM pg_notify('movie_changes', json_build_object(
+            'type', CASE TG_OP WHEN 'INSERT' THEN 'create' ELSE 'update' END,
+            'id', NEW.id, 'title', NEW.title, 'version', NEW.version)::text);
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS movie_changes_trigger ON movie;
+CREATE TRIGGER movie_changes_trigger
+    AFTER INSERT OR UPDATE OR DELETE OR TRUNCATE ON movie
+    FOR EACH STATEMENT EXECUTE PROCEDURE movie_changes_increment();
+
+DROP TRIGGER IF EXISTS movie_changes_notify_trigger ON movie;
+CREATE TRIGGER movie_changes_notify_trigger
+    AFTER INSERT OR UPDATE OR DELETE ON movie
+    FOR EACH ROW EXECUTE PROCEDURE movie_changes_notify();
@@ -0,0 +1,21 @@
+CREATE TABLE IF NOT EXISTS movie (
+    id BIGSERIAL PRIMARY KEY,
+    title VARCHAR(255) NOT NULL
+);
+
+-- controle de concorrência otimista: todo UPDATE incrementa a versão
+ALTER TABLE movie ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS user_table (
+    id BIGSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    username VARCHAR(255) NOT NULL UNIQUE,
+    password VARCHAR(255) NOT NULL,
+    authorities VARCHAR(255) NOT NULL
+);
+
+-- busca por título: igualdade exata, igualdade/prefixo sem diferenciar maiúsculas e "contém"
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS movie_title_idx ON movie (title);
+CREATE INDEX IF NOT EXISTS movie_lower_title_idx ON movie (lower(title) text_pattern_ops);
+CREATE INDEX IF NOT EXISTS movie_lower_title_trgm_idx ON movie USING gin (lower(title) gin_trgm_ops);
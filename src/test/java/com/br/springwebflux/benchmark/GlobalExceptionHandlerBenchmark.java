@@ -0,0 +1,73 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.exception.CustomAttributes;
+import com.br.springwebflux.exception.GlobalExceptionHandler;
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.web.ResourceProperties;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.TimeUnit;
+
+//caminho de erro completo: GlobalExceptionHandler.handle -> formatErrorResponse -> corpo JSON escrito
+//notFound é o 404 de antes (ResponseStatusException com stack trace, mapa de atributos e codec),
+//notFoundStackless o de agora (StacklessResponseStatusException e corpo pré-renderizado),
+//unexpected um 500 vindo de uma exceção qualquer; as exceções são criadas dentro da medição
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=GlobalExceptionHandlerBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class GlobalExceptionHandlerBenchmark {
+
+    private GlobalExceptionHandler handler;
+
+    @Setup
+    public void setUp() throws Exception {
+        //sem o Spring Boot inicializando o log o logback fica em DEBUG; o custo de escrever log fica fora da medição
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.OFF);
+        handler = new GlobalExceptionHandler(new CustomAttributes(), new ResourceProperties(),
+                new StaticApplicationContext(), ServerCodecConfigurer.create(), new SimpleMeterRegistry());
+        handler.afterPropertiesSet();
+    }
+
+    @Benchmark
+    public MockServerWebExchange notFound() {
+        return handle(new ResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+    }
+
+    @Benchmark
+    public MockServerWebExchange notFoundStackless() {
+        return handle(new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+    }
+
+    @Benchmark
+    public MockServerWebExchange unexpected() {
+        return handle(new IllegalStateException("unexpected"));
+    }
+
+    private MockServerWebExchange handle(Throwable error) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/movies/1"));
+        handler.handle(exchange, error).block();
+        return exchange;
+    }
+}
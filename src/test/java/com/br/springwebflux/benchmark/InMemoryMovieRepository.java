@@ -0,0 +1,271 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.repository.MovieRepository;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+//MovieRepository em memória para os benchmarks: mesma semântica das queries (ordem por id,
+//keyset, LIKE sem diferenciar maiúsculas, versão no UPDATE), sem rede e sem Postgres,
+//então os números medem só o código da aplicação e se repetem em qualquer máquina
+public class InMemoryMovieRepository implements MovieRepository {
+
+    private final ConcurrentNavigableMap<Long, Movie> movies = new ConcurrentSkipListMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+
+    public static InMemoryMovieRepository withMovies(int count) {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        for (int i = 0; i < count; i++) {
+            repository.insert(Movie.builder().title("movie " + i).build());
+        }
+        return repository;
+    }
+
+    private Movie insert(Movie movie) {
+        long id = sequence.incrementAndGet();
+        Movie saved = movie.withId(id).withVersion(0L);
+        movies.put(id, saved);
+        changes.incrementAndGet();
+        return saved;
+    }
+
+    private Movie upsert(Movie movie) {
+        if (movie.getId() == null) {
+            return insert(movie);
+        }
+        Movie saved = movie.withVersion(movie.getVersion() == null ? 0L : movie.getVersion() + 1);
+        movies.put(saved.getId(), saved);
+        changes.incrementAndGet();
+        return saved;
+    }
+
+    private Flux<Movie> pageAfter(Long after, int limit, Predicate<Movie> filter) {
+        return Flux.defer(() -> {
+            List<Movie> page = new ArrayList<>(Math.min(limit, 128));
+            for (Movie movie : movies.tailMap(after, false).values()) {
+                if (page.size() == limit) {
+                    break;
+                }
+                if (filter.test(movie)) {
+                    page.add(movie);
+                }
+            }
+            return Flux.fromIterable(page);
+        });
+    }
+
+    //LIKE do Postgres com a barra invertida como escape, igual ao MovieService.escapeLike
+    private static Pattern likeToPattern(String like) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '\\' && i + 1 < like.length()) {
+                regex.append(Pattern.quote(String.valueOf(like.charAt(++i))));
+            } else if (c == '%') {
+                regex.append(".*");
+            } else if (c == '_') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    @Override
+    public Mono<Movie> findMovieByTitle(String title) {
+        return Mono.fromSupplier(() -> movies.values().stream()
+                .filter(movie -> title.equals(movie.getTitle()))
+                .findFirst()
+                .orElse(null));
+    }
+
+    @Override
+    public Flux<Movie> searchByTitleIgnoringCase(String title, Long after, int limit) {
+        String lowerTitle = title.toLowerCase(Locale.ROOT);
+        return pageAfter(after, limit, movie -> lowerTitle.equals(movie.getTitle().toLowerCase(Locale.ROOT)));
+    }
+
+    @Override
+    public Flux<Movie> searchByTitleLike(String pattern, Long after, int limit) {
+        return Flux.defer(() -> {
+            Pattern regex = likeToPattern(pattern.toLowerCase(Locale.ROOT));
+            return pageAfter(after, limit, movie -> regex.matcher(movie.getTitle().toLowerCase(Locale.ROOT)).matches());
+        });
+    }
+
+    @Override
+    public Flux<Movie> findAllByIdIn(Long[] ids) {
+        return Flux.defer(() -> {
+            List<Movie> found = new ArrayList<>(ids.length);
+            for (Long id : new TreeSet<>(Arrays.asList(ids))) {
+                Movie movie = movies.get(id);
+                if (movie != null) {
+                    found.add(movie);
+                }
+            }
+            return Flux.fromIterable(found);
+        });
+    }
+
+    @Override
+    public Flux<Movie> findPageAfter(Long after, int limit) {
+        return pageAfter(after, limit, movie -> true);
+    }
+
+    @Override
+    public Mono<Long> updateTitle(Long id, String title) {
+        return Mono.fromSupplier(() -> {
+            Movie updated = movies.computeIfPresent(id, (key, movie) -> movie.withTitle(title).withVersion(movie.getVersion() + 1));
+            changed(updated == null ? 0 : 1);
+            return updated == null ? null : updated.getVersion();
+        });
+    }
+
+    @Override
+    public Mono<Long> updateTitleIfVersion(Long id, String title, Long version) {
+        return Mono.fromSupplier(() -> {
+            Movie current = movies.get(id);
+            boolean updated = current != null && Objects.equals(current.getVersion(), version)
+                    && movies.replace(id, current, current.withTitle(title).withVersion(version + 1));
+            changed(updated ? 1 : 0);
+            return updated ? version + 1 : null;
+        });
+    }
+
+    @Override
+    public Mono<Integer> deleteMovieById(Long id) {
+        return Mono.fromSupplier(() -> changed(movies.remove(id) == null ? 0 : 1));
+    }
+
+    //como o trigger do Postgres: toda escrita muda o contador, mesmo sem linha afetada
+    private int changed(int rowsAffected) {
+        changes.incrementAndGet();
+        return rowsAffected;
+    }
+
+    @Override
+    public Mono<Long> findChangeCounter() {
+        return Mono.fromSupplier(changes::get);
+    }
+
+    @Override
+    public Flux<Movie> streamAfter(long after, int fetchSize) {
+        return Flux.defer(() -> Flux.fromIterable(movies.tailMap(after, false).values()));
+    }
+
+    @Override
+    public Flux<Movie> insertAll(List<Movie> toInsert) {
+        return Flux.defer(() -> {
+            List<Movie> saved = new ArrayList<>(toInsert.size());
+            for (Movie movie : toInsert) {
+                saved.add(insert(movie));
+            }
+            return Flux.fromIterable(saved);
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <S extends Movie> Mono<S> save(S movie) {
+        return Mono.fromSupplier(() -> (S) upsert(movie));
+    }
+
+    @Override
+    public <S extends Movie> Flux<S> saveAll(Iterable<S> entities) {
+        return Flux.fromIterable(entities).concatMap(this::save);
+    }
+
+    @Override
+    public <S extends Movie> Flux<S> saveAll(Publisher<S> entityStream) {
+        return Flux.from(entityStream).concatMap(this::save);
+    }
+
+    @Override
+    public Mono<Movie> findById(Long id) {
+        return Mono.fromSupplier(() -> movies.get(id));
+    }
+
+    @Override
+    public Mono<Movie> findById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Long id) {
+        return Mono.fromSupplier(() -> movies.containsKey(id));
+    }
+
+    @Override
+    public Mono<Boolean> existsById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::existsById);
+    }
+
+    @Override
+    public Flux<Movie> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(movies.values()));
+    }
+
+    @Override
+    public Flux<Movie> findAllById(Iterable<Long> ids) {
+        return Flux.fromIterable(ids).concatMap(this::findById);
+    }
+
+    @Override
+    public Flux<Movie> findAllById(Publisher<Long> idStream) {
+        return Flux.from(idStream).concatMap(this::findById);
+    }
+
+    @Override
+    public Mono<Long> count() {
+        return Mono.fromSupplier(() -> (long) movies.size());
+    }
+
+    @Override
+    public Mono<Void> deleteById(Long id) {
+        return Mono.fromRunnable(() -> changed(movies.remove(id) == null ? 0 : 1));
+    }
+
+    @Override
+    public Mono<Void> deleteById(Publisher<Long> id) {
+        return Mono.from(id).flatMap(this::deleteById);
+    }
+
+    @Override
+    public Mono<Void> delete(Movie movie) {
+        return deleteById(movie.getId());
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Iterable<? extends Movie> entities) {
+        return Flux.fromIterable(entities).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll(Publisher<? extends Movie> entityStream) {
+        return Flux.from(entityStream).concatMap(this::delete).then();
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(() -> {
+            movies.clear();
+            changes.incrementAndGet();
+        });
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.config.CodecConfig;
+import com.br.springwebflux.model.Movie;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//serialização de um Flux<Movie> com o Jackson2JsonEncoder configurado no CodecConfig:
+//array JSON (GET /movies) contra NDJSON (GET /movies/stream), por quantidade de filmes
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MovieJsonBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MovieJsonBenchmark {
+
+    private static final ResolvableType MOVIE_TYPE = ResolvableType.forClass(Movie.class);
+
+    @Param({"1", "20", "1000"})
+    private int size;
+
+    private Jackson2JsonEncoder encoder;
+    private DefaultDataBufferFactory bufferFactory;
+    private List<Movie> movies;
+
+    @Setup
+    public void setUp() {
+        //sem o Spring Boot inicializando o log o logback fica em DEBUG; o custo de escrever log fica fora da medição
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.OFF);
+        ServerCodecConfigurer configurer = ServerCodecConfigurer.create();
+        new CodecConfig().ndjsonCodecCustomizer(new ObjectMapper()).customize(configurer);
+        encoder = configurer.getWriters().stream()
+                .filter(writer -> writer instanceof EncoderHttpMessageWriter)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(Jackson2JsonEncoder.class::isInstance)
+                .map(Jackson2JsonEncoder.class::cast)
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        bufferFactory = new DefaultDataBufferFactory();
+        movies = new ArrayList<>(size);
+        for (long i = 1; i <= size; i++) {
+            movies.add(Movie.builder().id(i).title("movie " + i).version(0L).build());
+        }
+    }
+
+    @Benchmark
+    public int jsonArray() {
+        return encode(MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public int ndjson() {
+        return encode(CodecConfig.APPLICATION_NDJSON);
+    }
+
+    //junta os buffers como o servidor faria ao escrever, e devolve ao pool
+    private int encode(MediaType mediaType) {
+        DataBuffer joined = DataBufferUtils.join(encoder.encode(Flux.fromIterable(movies), bufferFactory,
+                MOVIE_TYPE, mediaType, Collections.emptyMap())).block();
+        int bytes = joined.readableByteCount();
+        DataBufferUtils.release(joined);
+        return bytes;
+    }
+}
@@ -0,0 +1,100 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieLookup;
+import com.br.springwebflux.model.MoviePage;
+import com.br.springwebflux.service.MovieCache;
+import com.br.springwebflux.service.MovieService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//custo do MovieService por operação (cache, SingleFlight, paginação, métricas do Reactor),
+//com o InMemoryMovieRepository no lugar do Postgres
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MovieServiceBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class MovieServiceBenchmark {
+
+    private static final int MOVIES = 10_000;
+    private static final int LOOKUP_SIZE = 50;
+
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private MovieService movieService;
+
+    @Setup
+    public void setUp() {
+        //sem o Spring Boot inicializando o log o logback fica em DEBUG; o custo de escrever log fica fora da medição
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.OFF);
+        MovieProperties movieProperties = new MovieProperties();
+        movieProperties.getCache().setEnabled(cacheEnabled);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        movieService = new MovieService(InMemoryMovieRepository.withMovies(MOVIES), movieProperties,
+                new MovieCache(movieProperties, meterRegistry));
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, MOVIES + 1);
+    }
+
+    @Benchmark
+    public Movie findById() {
+        return movieService.findById(randomId()).block();
+    }
+
+    //50 ids numa chamada só; comparar com 50 x findById
+    @Benchmark
+    public List<MovieLookup> findAllById() {
+        List<Long> ids = new ArrayList<>(LOOKUP_SIZE);
+        for (int i = 0; i < LOOKUP_SIZE; i++) {
+            ids.add(randomId());
+        }
+        return movieService.findAllById(ids).collectList().block();
+    }
+
+    @Benchmark
+    public MoviePage findPage() {
+        return movieService.findPage(randomId(), null).block();
+    }
+
+    //as buscas incluem a varredura do repositório em memória, que faz o papel do índice
+    @Benchmark
+    public MoviePage searchPrefix() {
+        return movieService.search("movie 12", "prefix", null, null).block();
+    }
+
+    @Benchmark
+    public MoviePage searchContains() {
+        return movieService.search("e 12", "contains", null, null).block();
+    }
+
+    //reescreve o mesmo título, então o tamanho do repositório não muda entre as iterações
+    @Benchmark
+    public Movie update() {
+        long id = randomId();
+        return movieService.update(Movie.builder().id(id).title("movie " + (id - 1)).build()).block();
+    }
+}
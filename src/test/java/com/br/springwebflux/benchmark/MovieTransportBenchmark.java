@@ -0,0 +1,167 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.SpringWebfluxApplication;
+import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieSearchRequest;
+import com.br.springwebflux.model.User;
+import com.br.springwebflux.repository.MovieRepository;
+import com.br.springwebflux.repository.UserRepository;
+import io.rsocket.metadata.WellKnownMimeType;
+import org.mockito.BDDMockito;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.boot.rsocket.context.RSocketServerInitializedEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.rsocket.RSocketRequester;
+import org.springframework.messaging.rsocket.RSocketStrategies;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.rsocket.metadata.SimpleAuthenticationEncoder;
+import org.springframework.security.rsocket.metadata.UsernamePasswordMetadata;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//a mesma consulta pelo HTTP/JSON do MovieController e pelo RSocket do MovieRSocketController,
+//com a aplicação inteira no ar (Netty, Spring Security, codecs) e repositórios em memória,
+//então a diferença é o custo do transporte por requisição: cabeçalhos, Basic e parse do HTTP
+//contra um frame numa conexão RSocket já aberta e autenticada no setup
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=MovieTransportBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+public class MovieTransportBenchmark {
+
+    private static final int MOVIES = 10_000;
+    private static final String USERNAME = "benchmark";
+    private static final String PASSWORD = "benchmark";
+    private static final MimeType SIMPLE_AUTHENTICATION =
+            MimeTypeUtils.parseMimeType(WellKnownMimeType.MESSAGE_RSOCKET_AUTHENTICATION.getString());
+    private static final ParameterizedTypeReference<List<Movie>> MOVIE_LIST = new ParameterizedTypeReference<List<Movie>>() {
+    };
+
+    @Param({"http-json", "rsocket-tcp-json", "rsocket-tcp-cbor", "rsocket-websocket-cbor"})
+    private String transport;
+
+    private ConfigurableApplicationContext context;
+    private WebClient webClient;
+    private RSocketRequester requester;
+
+    @Setup
+    public void setUp() {
+        LoggingSystem.get(getClass().getClassLoader()).setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.OFF);
+        AtomicInteger rsocketPort = new AtomicInteger();
+        context = new SpringApplicationBuilder(SpringWebfluxApplication.class)
+                .web(WebApplicationType.REACTIVE)
+                .properties("server.port=0",
+                        "spring.rsocket.server.port=0",
+                        "rsocket.websocket.mapping-path=/rsocket",
+                        "spring.data.r2dbc.repositories.enabled=false",
+                        "spring.devtools.restart.enabled=false",
+                        "logging.level.root=OFF",
+                        "movies.cache.enabled=true")
+                .initializers(applicationContext -> {
+                    GenericApplicationContext genericContext = (GenericApplicationContext) applicationContext;
+                    genericContext.registerBean(MovieRepository.class, () -> InMemoryMovieRepository.withMovies(MOVIES));
+                    genericContext.registerBean(UserRepository.class, MovieTransportBenchmark::userRepository);
+                })
+                .listeners((ApplicationListener<RSocketServerInitializedEvent>) event ->
+                        rsocketPort.set(event.getServer().address().getPort()))
+                .run();
+        int httpPort = ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        if (transport.startsWith("http")) {
+            String basic = Base64.getEncoder().encodeToString((USERNAME + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+            webClient = WebClient.builder()
+                    .baseUrl("http://localhost:" + httpPort)
+                    .defaultHeader(HttpHeaders.AUTHORIZATION, "Basic " + basic)
+                    .build();
+            return;
+        }
+        RSocketRequester.Builder builder = RSocketRequester.builder()
+                .rsocketStrategies(context.getBean(RSocketStrategies.class).mutate()
+                        .encoder(new SimpleAuthenticationEncoder())
+                        .build())
+                .dataMimeType(MimeTypeUtils.parseMimeType(transport.endsWith("cbor") ? "application/cbor" : "application/json"))
+                .setupMetadata(new UsernamePasswordMetadata(USERNAME, PASSWORD), SIMPLE_AUTHENTICATION);
+        Mono<RSocketRequester> connection = transport.startsWith("rsocket-tcp")
+                ? builder.connectTcp("localhost", rsocketPort.get())
+                : builder.connectWebSocket(URI.create("ws://localhost:" + httpPort + "/rsocket"));
+        requester = connection.block();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (requester != null) {
+            requester.rsocket().dispose();
+        }
+        context.close();
+    }
+
+    private static UserRepository userRepository() {
+        String password = PasswordEncoderFactories.createDelegatingPasswordEncoder().encode(PASSWORD);
+        UserRepository userRepository = Mockito.mock(UserRepository.class);
+        BDDMockito.when(userRepository.findByUsername(USERNAME))
+                .thenReturn(Mono.just(new User(1L, USERNAME, USERNAME, password, "ROLE_USER,ROLE_ADMIN")));
+        return userRepository;
+    }
+
+    private static long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, MOVIES + 1);
+    }
+
+    //request-response contra GET /movies/{id}; o filme vem do MovieCache depois do aquecimento
+    @Benchmark
+    public Movie findById() {
+        long id = randomId();
+        if (webClient != null) {
+            return webClient.get().uri("/movies/{id}", id).retrieve().bodyToMono(Movie.class).block();
+        }
+        return requester.route("movies.find").data(id).retrieveMono(Movie.class).block();
+    }
+
+    //request-stream contra GET /movies/search: uma página de 20 filmes
+    @Benchmark
+    public List<Movie> searchPrefix() {
+        if (webClient != null) {
+            return webClient.get().uri("/movies/search?q={q}&mode=prefix&limit=20", "movie 12")
+                    .retrieve().bodyToMono(MOVIE_LIST).block();
+        }
+        return requester.route("movies.search")
+                .data(MovieSearchRequest.builder().q("movie 12").mode("prefix").limit(20).build())
+                .retrieveFlux(Movie.class)
+                .collectList()
+                .block();
+    }
+}
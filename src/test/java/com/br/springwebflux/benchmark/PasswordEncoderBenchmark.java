@@ -0,0 +1,55 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.config.CachingPasswordEncoder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+//custo de CPU da verificação de senha de cada requisição HTTP Basic:
+//bcrypt puro (como era) contra o CachingPasswordEncoder com a senha já verificada
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=PasswordEncoderBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class PasswordEncoderBenchmark {
+
+    private static final String PASSWORD = "admin";
+
+    private PasswordEncoder bcrypt;
+    private PasswordEncoder caching;
+    private String encodedPassword;
+
+    @Setup
+    public void setUp() {
+        bcrypt = PasswordEncoderFactories.createDelegatingPasswordEncoder();
+        caching = new CachingPasswordEncoder(bcrypt, 10_000, Duration.ofMinutes(2), new SimpleMeterRegistry());
+        encodedPassword = bcrypt.encode(PASSWORD);
+        caching.matches(PASSWORD, encodedPassword);
+    }
+
+    @Benchmark
+    public boolean bcryptOnEveryRequest() {
+        return bcrypt.matches(PASSWORD, encodedPassword);
+    }
+
+    @Benchmark
+    public boolean cachedCredential() {
+        return caching.matches(PASSWORD, encodedPassword);
+    }
+}
@@ -0,0 +1,67 @@
+package com.br.springwebflux.benchmark;
+
+import com.br.springwebflux.model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+//caminho da autorização: getAuthorities + hasRole("ADMIN") numa requisição
+//splitOnEveryCall é o User.getAuthorities antigo, sharedAuthorities o atual
+//mvn -Pbenchmark test-compile exec:exec -Dbenchmark=UserAuthoritiesBenchmark
+//a alocação aparece em gc.alloc.rate.norm (bytes por operação)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class UserAuthoritiesBenchmark {
+
+    private static final String ADMIN = "ROLE_ADMIN";
+
+    private String authorities;
+    private User user;
+
+    @Setup
+    public void setUp() {
+        authorities = "ROLE_USER,ROLE_ADMIN";
+        user = new User(1L, "Admin", "admin", "{bcrypt}hash", authorities);
+    }
+
+    @Benchmark
+    public void splitOnEveryCall(Blackhole blackhole) {
+        Collection<? extends GrantedAuthority> parsed = Arrays.stream(authorities.split(","))
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        blackhole.consume(hasAuthority(parsed));
+    }
+
+    @Benchmark
+    public void sharedAuthorities(Blackhole blackhole) {
+        blackhole.consume(hasAuthority(user.getAuthorities()));
+    }
+
+    private static boolean hasAuthority(Collection<? extends GrantedAuthority> authorities) {
+        for (GrantedAuthority authority : authorities) {
+            if (ADMIN.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
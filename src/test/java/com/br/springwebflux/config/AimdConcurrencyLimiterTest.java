@@ -0,0 +1,85 @@
+package com.br.springwebflux.config;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class AimdConcurrencyLimiterTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofMillis(300).toNanos();
+
+    private AimdConcurrencyLimiter limiter;
+
+    @BeforeEach
+    public void setUp() {
+        ConcurrencyLimitProperties.Limit properties = new ConcurrencyLimitProperties.Limit();
+        properties.setInitialLimit(4);
+        properties.setMinLimit(1);
+        properties.setMaxLimit(5);
+        properties.setLatencyThreshold(Duration.ofMillis(250));
+        properties.setBackoffRatio(0.5);
+        limiter = new AimdConcurrencyLimiter(properties, 0);
+    }
+
+    @Test
+    @DisplayName("tryAcquire rejects once the limit is in flight and accepts again after a release")
+    public void tryAcquire_RejectsRequest_WhenLimitIsInFlight() {
+        for (int i = 0; i < 4; i++) {
+            Assertions.assertTrue(limiter.tryAcquire());
+        }
+        Assertions.assertFalse(limiter.tryAcquire());
+
+        limiter.release();
+
+        Assertions.assertTrue(limiter.tryAcquire());
+        Assertions.assertEquals(4, limiter.getInFlight());
+    }
+
+    @Test
+    @DisplayName("onSample grows the limit by one per fast response while it is in use, up to the max")
+    public void onSample_IncreasesLimit_WhenResponsesAreFast() {
+        limiter.tryAcquire();
+        limiter.tryAcquire();
+
+        limiter.onSample(100, 100 + FAST, false);
+        limiter.onSample(200, 200 + FAST, false);
+        limiter.onSample(300, 300 + FAST, false);
+
+        Assertions.assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("onSample does not grow the limit when most of it is idle")
+    public void onSample_KeepsLimit_WhenLimitIsNotInUse() {
+        limiter.tryAcquire();
+
+        limiter.onSample(100, 100 + FAST, false);
+
+        Assertions.assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("onSample backs off once for requests that were already in flight when the limit dropped")
+    public void onSample_DecreasesLimitOnce_WhenConcurrentResponsesAreSlow() {
+        limiter.onSample(100, 100 + SLOW, false);
+        limiter.onSample(150, 150 + SLOW, false);
+
+        Assertions.assertEquals(2, limiter.getLimit());
+
+        limiter.onSample(200 + SLOW, 200 + SLOW + FAST, true);
+
+        Assertions.assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    @DisplayName("onSample backs off on an overloaded response even when it was fast")
+    public void onSample_DecreasesLimit_WhenResponseIsOverloaded() {
+        limiter.onSample(100, 100 + FAST, true);
+
+        Assertions.assertEquals(2, limiter.getLimit());
+    }
+}
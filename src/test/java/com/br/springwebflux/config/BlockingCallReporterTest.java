@@ -0,0 +1,59 @@
+package com.br.springwebflux.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.blockhound.BlockingMethod;
+import reactor.blockhound.BlockingOperationError;
+
+import java.lang.reflect.Modifier;
+
+class BlockingCallReporterTest {
+
+    private final BlockingMethod sleep = new BlockingMethod("java.lang.Thread", "sleep", Modifier.STATIC);
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    @DisplayName("accept counts the blocking call by method and call site without throwing")
+    public void accept_CountsByCallSite_WhenModeIsCount() {
+        BlockingCallReporter reporter = new BlockingCallReporter(BlockHoundProperties.Mode.COUNT, 1.0, meterRegistry);
+
+        reporter.accept(sleep);
+        reporter.accept(sleep);
+
+        Counter counter = meterRegistry.find(BlockingCallReporter.METRIC_NAME)
+                .tags("method", sleep.toString(),
+                        "site", getClass().getName() + ".accept_CountsByCallSite_WhenModeIsCount")
+                .counter();
+        Assertions.assertNotNull(counter);
+        Assertions.assertEquals(2, counter.count());
+    }
+
+    @Test
+    @DisplayName("accept counts and then fails the call in strict mode")
+    public void accept_ThrowsBlockingOperationError_WhenModeIsStrict() {
+        BlockingCallReporter reporter = new BlockingCallReporter(BlockHoundProperties.Mode.STRICT, 0.0, meterRegistry);
+
+        Assertions.assertThrows(BlockingOperationError.class, () -> reporter.accept(sleep));
+        Assertions.assertEquals(1, meterRegistry.find(BlockingCallReporter.METRIC_NAME).counter().count());
+    }
+
+    @Test
+    @DisplayName("accept ignores blocking calls that are not sampled")
+    public void accept_IgnoresCall_WhenSampleRateIsZero() {
+        BlockingCallReporter reporter = new BlockingCallReporter(BlockHoundProperties.Mode.LOG, 0.0, meterRegistry);
+
+        reporter.accept(sleep);
+
+        Assertions.assertNull(meterRegistry.find(BlockingCallReporter.METRIC_NAME).counter());
+    }
+}
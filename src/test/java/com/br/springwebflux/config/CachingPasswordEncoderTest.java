@@ -0,0 +1,74 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.service.UserCredentialsChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.time.Duration;
+
+@ExtendWith(SpringExtension.class)
+class CachingPasswordEncoderTest {
+
+    private static final String ENCODED = "{bcrypt}$2a$10$hash";
+
+    @Mock
+    private PasswordEncoder delegateMock;
+
+    private CachingPasswordEncoder passwordEncoder;
+
+    @BeforeEach
+    public void setUp() {
+        passwordEncoder = new CachingPasswordEncoder(delegateMock, 100, Duration.ofMinutes(2), new SimpleMeterRegistry());
+
+        BDDMockito.when(delegateMock.matches("admin", ENCODED)).thenReturn(true);
+        BDDMockito.when(delegateMock.matches("wrong", ENCODED)).thenReturn(false);
+    }
+
+    @Test
+    @DisplayName("matches verifies a password with the delegate only once")
+    public void matches_SkipsDelegate_WhenPasswordWasAlreadyVerified() {
+        Assertions.assertTrue(passwordEncoder.matches("admin", ENCODED));
+        Assertions.assertTrue(passwordEncoder.matches("admin", ENCODED));
+
+        BDDMockito.verify(delegateMock, Mockito.times(1)).matches("admin", ENCODED);
+    }
+
+    @Test
+    @DisplayName("matches never caches a wrong password")
+    public void matches_AlwaysCallsDelegate_WhenPasswordIsWrong() {
+        Assertions.assertFalse(passwordEncoder.matches("wrong", ENCODED));
+        Assertions.assertFalse(passwordEncoder.matches("wrong", ENCODED));
+
+        BDDMockito.verify(delegateMock, Mockito.times(2)).matches("wrong", ENCODED);
+    }
+
+    @Test
+    @DisplayName("matches does not reuse a verification made against another stored hash")
+    public void matches_CallsDelegate_WhenStoredHashChanged() {
+        BDDMockito.when(delegateMock.matches(ArgumentMatchers.eq("admin"), ArgumentMatchers.anyString())).thenReturn(false);
+        BDDMockito.when(delegateMock.matches("admin", ENCODED)).thenReturn(true);
+
+        Assertions.assertTrue(passwordEncoder.matches("admin", ENCODED));
+        Assertions.assertFalse(passwordEncoder.matches("admin", "{bcrypt}$2a$10$newHash"));
+    }
+
+    @Test
+    @DisplayName("matches verifies again after the credentials changed")
+    public void matches_CallsDelegate_WhenCredentialsChanged() {
+        Assertions.assertTrue(passwordEncoder.matches("admin", ENCODED));
+        passwordEncoder.onUserCredentialsChanged(new UserCredentialsChangedEvent(this, "admin"));
+        Assertions.assertTrue(passwordEncoder.matches("admin", ENCODED));
+
+        BDDMockito.verify(delegateMock, Mockito.times(2)).matches("admin", ENCODED);
+    }
+}
@@ -0,0 +1,79 @@
+package com.br.springwebflux.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+
+class ConcurrencyLimitWebFilterTest {
+
+    private final MonoProcessor<Void> pending = MonoProcessor.create();
+    private final WebFilterChain pendingChain = exchange -> pending;
+    private SimpleMeterRegistry meterRegistry;
+    private ConcurrencyLimitWebFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ConcurrencyLimitProperties properties = new ConcurrencyLimitProperties();
+        properties.setRetryAfter(Duration.ofSeconds(2));
+        properties.getRead().setInitialLimit(1);
+        properties.getRead().setMinLimit(1);
+        properties.getWrite().setInitialLimit(1);
+        properties.getWrite().setMinLimit(1);
+        filter = new ConcurrencyLimitWebFilter(properties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("filter rejects with 503 and Retry-After when the read limit is in flight")
+    public void filter_ReturnServiceUnavailable_WhenReadLimitIsInFlight() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/movies/1")), pendingChain).subscribe();
+        MockServerWebExchange rejected = MockServerWebExchange.from(MockServerHttpRequest.get("/movies/2"));
+
+        StepVerifier.create(filter.filter(rejected, exchange -> Mono.empty()))
+                .expectErrorSatisfies(e -> Assertions.assertEquals(HttpStatus.SERVICE_UNAVAILABLE, ((ResponseStatusException) e).getStatus()))
+                .verify();
+
+        Assertions.assertEquals("2", rejected.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        Assertions.assertEquals(1.0, meterRegistry.get("http.server.concurrency.rejected").tag("route", "read").counter().count());
+        Assertions.assertEquals(1.0, meterRegistry.get("http.server.concurrency.in-flight").tag("route", "read").gauge().value());
+    }
+
+    @Test
+    @DisplayName("filter keeps separate limits for reads and writes and releases the permit when the request ends")
+    public void filter_AcceptWrite_WhenOnlyReadLimitIsInFlight() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/movies")), pendingChain).subscribe();
+
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/movies")), exchange -> Mono.empty()))
+                .verifyComplete();
+
+        pending.onComplete();
+
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/movies")), exchange -> Mono.empty()))
+                .verifyComplete();
+        Assertions.assertEquals(0.0, meterRegistry.get("http.server.concurrency.in-flight").tag("route", "read").gauge().value());
+    }
+
+    @Test
+    @DisplayName("filter does not limit the change feed or routes outside /movies")
+    public void filter_SkipLimit_WhenRouteIsNotLimited() {
+        filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/movies")), pendingChain).subscribe();
+
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/movies/changes")), exchange -> Mono.empty()))
+                .verifyComplete();
+        StepVerifier.create(filter.filter(MockServerWebExchange.from(MockServerHttpRequest.get("/actuator/health")), exchange -> Mono.empty()))
+                .verifyComplete();
+    }
+}
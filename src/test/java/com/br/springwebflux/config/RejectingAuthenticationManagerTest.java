@@ -0,0 +1,140 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.MapReactiveUserDetailsService;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.server.authentication.AuthenticationWebFilter;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+
+class RejectingAuthenticationManagerTest {
+
+    private final CountDownLatch hashing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private SimpleMeterRegistry meterRegistry;
+    private Scheduler scheduler;
+    private RejectingAuthenticationManager authenticationManager;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        AuthProperties authProperties = new AuthProperties();
+        authProperties.getHashing().setThreads(1);
+        authProperties.getHashing().setQueueCapacity(1);
+        scheduler = new SecurityConfig().passwordHashScheduler(authProperties, meterRegistry);
+
+        PasswordEncoder blockingPasswordEncoder = new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                if (!"admin".contentEquals(rawPassword)) {
+                    return rawPassword.toString().equals(encodedPassword);
+                }
+                hashing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+        CachingPasswordEncoder passwordEncoder = new CachingPasswordEncoder(blockingPasswordEncoder, 100,
+                Duration.ofMinutes(2), meterRegistry);
+        CacheFirstAuthenticationManager delegate = new CacheFirstAuthenticationManager(
+                new MapReactiveUserDetailsService(
+                        User.withUsername("admin").password("admin").roles("ADMIN").build(),
+                        User.withUsername("user").password("user").roles("USER").build()),
+                passwordEncoder, scheduler);
+        authenticationManager = new RejectingAuthenticationManager(delegate, meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        scheduler.dispose();
+    }
+
+    @Test
+    @DisplayName("authenticate runs the password check off the calling thread")
+    public void authenticate_RunsPasswordCheckOnHashScheduler() {
+        release.countDown();
+
+        StepVerifier.create(authenticationManager.authenticate(token()))
+                .expectNextMatches(authentication -> authentication.isAuthenticated()
+                        && Thread.currentThread().getName().startsWith("password-hash-"))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("authenticate fails fast with 503 when the hash queue is full")
+    public void authenticate_ReturnsServiceUnavailable_WhenQueueIsFull() throws InterruptedException {
+        Disposable running = authenticationManager.authenticate(token()).subscribe();
+        hashing.await();
+        Disposable queued = authenticationManager.authenticate(token()).subscribe();
+
+        StepVerifier.create(authenticationManager.authenticate(token()))
+                .expectErrorMatches(e -> e instanceof StacklessResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify();
+
+        Assertions.assertEquals(1.0, meterRegistry.counter("auth.password.hash.rejected").count());
+        running.dispose();
+        queued.dispose();
+    }
+
+    @Test
+    @DisplayName("authenticate lets a cached user in while the hash queue is full")
+    public void authenticate_ReturnsOk_WhenQueueIsFullAndCredentialsAreCached() throws InterruptedException {
+        StepVerifier.create(authenticationManager.authenticate(new UsernamePasswordAuthenticationToken("user", "user")))
+                .expectNextMatches(Authentication::isAuthenticated)
+                .verifyComplete();
+
+        Disposable running = authenticationManager.authenticate(token()).subscribe();
+        hashing.await();
+        Disposable queued = authenticationManager.authenticate(token()).subscribe();
+        StepVerifier.create(authenticationManager.authenticate(token()))
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/movies")
+                .header(HttpHeaders.AUTHORIZATION, "Basic " + Base64.getEncoder()
+                        .encodeToString("user:user".getBytes(StandardCharsets.UTF_8))));
+        StepVerifier.create(new AuthenticationWebFilter(authenticationManager)
+                        .filter(exchange, e -> Mono.fromRunnable(() -> e.getResponse().setStatusCode(HttpStatus.OK))))
+                .verifyComplete();
+        Assertions.assertEquals(HttpStatus.OK, exchange.getResponse().getStatusCode());
+
+        running.dispose();
+        queued.dispose();
+    }
+
+    private UsernamePasswordAuthenticationToken token() {
+        return new UsernamePasswordAuthenticationToken("admin", "admin");
+    }
+}
@@ -0,0 +1,79 @@
+package com.br.springwebflux.config;
+
+import com.br.springwebflux.model.User;
+import com.br.springwebflux.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+class RepositoryMetricsPostProcessorTest {
+
+    private final User user = new User(1L, "Admin", "admin", "{bcrypt}hash", "ROLE_USER,ROLE_ADMIN");
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserRepository userRepository;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("meterRegistry", meterRegistry);
+
+        //como no Spring Data: proxy da interface com um interceptor final que executa a query sem chamar proceed
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.addInterface(UserRepository.class);
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "findByUsername":
+                    return "admin".equals(invocation.getArguments()[0]) ? Mono.just(user) : Mono.empty();
+                case "findAll":
+                    return Flux.just(user, user);
+                default:
+                    return Mono.error(new IllegalStateException("database is down"));
+            }
+        });
+        Object repository = new RepositoryMetricsPostProcessor(beanFactory.getBeanProvider(MeterRegistry.class))
+                .postProcessAfterInitialization(proxyFactory.getProxy(), "userRepository");
+        userRepository = (UserRepository) repository;
+    }
+
+    @Test
+    @DisplayName("repository calls are timed when the result is subscribed")
+    public void invocation_IsTimedOnSubscribe() {
+        Mono<User> findByUsername = userRepository.findByUsername("admin");
+        Assertions.assertNull(timer("findByUsername", "SUCCESS", "None"));
+
+        StepVerifier.create(findByUsername).expectNext(user).verifyComplete();
+        StepVerifier.create(findByUsername).expectNext(user).verifyComplete();
+        StepVerifier.create(userRepository.findAll()).expectNextCount(2).verifyComplete();
+
+        Assertions.assertEquals(2, timer("findByUsername", "SUCCESS", "None").count());
+        Assertions.assertEquals(1, timer("findAll", "SUCCESS", "None").count());
+    }
+
+    @Test
+    @DisplayName("failed repository calls are timed with the exception")
+    public void invocation_IsTimedWithException_WhenQueryFails() {
+        StepVerifier.create(userRepository.count())
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        Assertions.assertEquals(1, timer("count", "ERROR", "IllegalStateException").count());
+    }
+
+    private Timer timer(String method, String state, String exception) {
+        return meterRegistry.find(RepositoryMetricsPostProcessor.METRIC_NAME)
+                .tags("repository", "UserRepository", "method", method, "state", state, "exception", exception)
+                .timer();
+    }
+}
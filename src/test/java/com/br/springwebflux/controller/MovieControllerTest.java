@@ -1,7 +1,12 @@
 package com.br.springwebflux.controller;
 
+import com.br.springwebflux.model.ChunkResult;
 import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieChangeEvent;
+import com.br.springwebflux.model.MovieLookup;
+import com.br.springwebflux.model.MoviePage;
 import com.br.springwebflux.repository.MovieRepository;
+import com.br.springwebflux.service.MovieChangeFeed;
 import com.br.springwebflux.service.MovieService;
 import com.br.springwebflux.util.MovieCreator;
 import org.junit.jupiter.api.*;
@@ -10,7 +15,10 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
 import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
@@ -34,6 +42,9 @@ class MovieControllerTest {
     @Mock
     private MovieService movieServiceMock;
 
+    @Mock
+    private MovieChangeFeed movieChangeFeedMock;
+
     private final Movie movie = MovieCreator.createValidMovie();
 
 
@@ -63,7 +74,19 @@ class MovieControllerTest {
 
     @BeforeEach
     public void setUp() {
-        BDDMockito.when(movieServiceMock.findAll())
+        BDDMockito.when(movieServiceMock.findPage(null, null))
+                .thenReturn(Mono.just(new MoviePage(Arrays.asList(movie), null)));
+
+        BDDMockito.when(movieServiceMock.findPage(null, 1))
+                .thenReturn(Mono.just(new MoviePage(Arrays.asList(movie), 1L)));
+
+        BDDMockito.when(movieServiceMock.search("lord", "contains", null, null))
+                .thenReturn(Mono.just(new MoviePage(Arrays.asList(movie), null)));
+
+        BDDMockito.when(movieServiceMock.changeCounter())
+                .thenReturn(Mono.just(7L));
+
+        BDDMockito.when(movieServiceMock.stream(null))
                 .thenReturn(Flux.just(movie));
 
         BDDMockito.when(movieServiceMock.findById(ArgumentMatchers.anyLong()))
@@ -79,17 +102,57 @@ class MovieControllerTest {
                 .thenReturn(Mono.empty());
 
         BDDMockito.when(movieServiceMock.update(MovieCreator.createValidMovie()))
-                .thenReturn(Mono.empty());
+                .thenReturn(Mono.just(MovieCreator.createValidMovie().withVersion(1L)));
     }
 
     @Test
-    @DisplayName("findAll returns a flux of movie")
-    public void findAll_ReturnFluxOfMovie_When_Successful(){
+    @DisplayName("findAll returns a page of movie")
+    public void findAll_ReturnPageOfMovie_When_Successful(){
         //Step Verifier da um .subscribe no Flux
-        StepVerifier.create(movieServiceMock.findAll())
+        StepVerifier.create(movieController.findAll(null, null, null))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getBody().equals(Arrays.asList(movie))
+                        && !response.getHeaders().containsKey(MovieController.NEXT_CURSOR_HEADER))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll returns the next cursor header when there is a next page")
+    public void findAll_ReturnNextCursorHeader_WhenThereIsNextPage(){
+        StepVerifier.create(movieController.findAll(null, 1, null))
+                .expectSubscription()
+                .expectNextMatches(response -> "1".equals(response.getHeaders().getFirst(MovieController.NEXT_CURSOR_HEADER)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAllById returns the lookup of each requested id")
+    public void findAllById_ReturnFluxOfMovieLookup_When_Successful(){
+        BDDMockito.when(movieServiceMock.findAllById(Arrays.asList(1L, 2L)))
+                .thenReturn(Flux.just(MovieLookup.found(movie), MovieLookup.missing(2L)));
+
+        StepVerifier.create(movieController.findAllById(Arrays.asList(1L, 2L)))
+                .expectSubscription()
+                .expectNext(MovieLookup.found(movie), MovieLookup.missing(2L))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("stream returns a flux of movie")
+    public void stream_ReturnFluxOfMovie_When_Successful(){
+        StepVerifier.create(movieController.stream(null))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search returns a page of movie")
+    public void search_ReturnPageOfMovie_When_Successful(){
+        StepVerifier.create(movieController.search("lord", "contains", null, null, null))
                 .expectSubscription()
-                .expectNext(movie).
-                verifyComplete();
+                .expectNextMatches(response -> response.getBody().equals(Arrays.asList(movie)))
+                .verifyComplete();
     }
 
     @Test
@@ -97,7 +160,7 @@ class MovieControllerTest {
     public void findById_ReturnMonoMovie_WhenSuccessful() {
         StepVerifier.create(movieController.findById(1L))
                 .expectSubscription()
-                .expectNext(movie)
+                .expectNextMatches(response -> response.getBody().equals(movie))
                 .verifyComplete();
     }
 
@@ -123,6 +186,20 @@ class MovieControllerTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("ingest returns the result of each chunk when successful")
+    public void ingest_ReturnsChunkResults_WhenSuccessful() {
+        Flux<Movie> movies = Flux.just(MovieCreator.createMovieToSave());
+        ChunkResult result = ChunkResult.builder().chunk(0).size(1).inserted(1).firstId(1L).lastId(1L).build();
+        BDDMockito.when(movieServiceMock.ingest(movies))
+                .thenReturn(Flux.just(result));
+
+        StepVerifier.create(movieController.ingest(movies))
+                .expectSubscription()
+                .expectNext(result)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("delete removes the movie when successful")
     public void delete_RemovesMovie_WhenSuccessful() {
@@ -132,13 +209,182 @@ class MovieControllerTest {
     }
 
     @Test
-    @DisplayName("update save updated a movie and returns empty mono when successful")
+    @DisplayName("update save updated a movie and returns no content with the new ETag when successful")
     public void update_SaveUpdatedMovie_WhenSuccessful() {
-        StepVerifier.create(movieController.update(1L, MovieCreator.createValidMovie()))
+        StepVerifier.create(movieController.update(1L, null, MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getStatusCode() == HttpStatus.NO_CONTENT
+                        && "\"1-1\"".equals(response.getHeaders().getETag()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("update with If-Match returns the ETag of the new version")
+    public void update_ReturnNewETag_WhenIfMatchVersionMatches() {
+        BDDMockito.when(movieServiceMock.update(MovieCreator.createValidMovie().withVersion(2L)))
+                .thenReturn(Mono.just(MovieCreator.createValidMovie().withVersion(3L)));
+
+        StepVerifier.create(movieController.update(1L, "\"1-2\"", MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getStatusCode() == HttpStatus.NO_CONTENT
+                        && "\"1-3\"".equals(response.getHeaders().getETag()))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findById returns the movie id and version as ETag")
+    public void findById_ReturnETag_WhenMovieHasVersion() {
+        BDDMockito.when(movieServiceMock.findById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(movie.withVersion(3L)));
+
+        StepVerifier.create(movieController.findById(1L))
                 .expectSubscription()
+                .expectNextMatches(response -> "\"1-3\"".equals(response.getHeaders().getETag()))
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("findByTitle returns different ETags for two movies with the same title and version")
+    public void findByTitle_ReturnDifferentETags_WhenAnotherMovieHasTheSameTitleAndVersion() {
+        Movie oldest = movie.withVersion(0L);
+        Movie next = movie.withId(2L).withVersion(0L);
+        BDDMockito.when(movieServiceMock.findByTitle(movie.getTitle()))
+                .thenReturn(Mono.just(oldest), Mono.just(next));
+
+        String firstETag = movieController.findByTitle(movie.getTitle()).block().getHeaders().getETag();
+        String secondETag = movieController.findByTitle(movie.getTitle()).block().getHeaders().getETag();
+
+        assertEquals("\"1-0\"", firstETag);
+        assertEquals("\"2-0\"", secondETag);
+    }
+
+    @Test
+    @DisplayName("findAll returns the table change counter as ETag")
+    public void findAll_ReturnChangesETag_WhenSuccessful() {
+        StepVerifier.create(movieController.findAll(null, null, null))
+                .expectSubscription()
+                .expectNextMatches(response -> "\"movies-7\"".equals(response.getHeaders().getETag())
+                        && response.getStatusCode() == HttpStatus.OK)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll returns not modified without loading the page when If-None-Match matches")
+    public void findAll_ReturnNotModified_WhenIfNoneMatchMatches() {
+        StepVerifier.create(movieController.findAll(null, null, "\"movies-6\", W/\"movies-7\""))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getStatusCode() == HttpStatus.NOT_MODIFIED
+                        && "\"movies-7\"".equals(response.getHeaders().getETag())
+                        && response.getBody() == null)
+                .verifyComplete();
+
+        BDDMockito.verify(movieServiceMock, Mockito.never()).findPage(ArgumentMatchers.any(), ArgumentMatchers.any());
+    }
+
+    @Test
+    @DisplayName("search returns bad request instead of not modified when the parameters are invalid")
+    public void search_ReturnBadRequest_WhenModeIsInvalidAndIfNoneMatchMatches() {
+        BDDMockito.willThrow(new ResponseStatusException(HttpStatus.BAD_REQUEST))
+                .given(movieServiceMock).validateSearch("lord", "fuzzy", null);
+
+        StepVerifier.create(movieController.search("lord", "fuzzy", null, null, "\"movies-7\""))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.BAD_REQUEST)
+                .verify();
+
+        BDDMockito.verify(movieServiceMock, Mockito.never()).changeCounter();
+    }
+
+    @Test
+    @DisplayName("search returns the page when If-None-Match is from an older change counter")
+    public void search_ReturnPage_WhenIfNoneMatchIsOutdated() {
+        StepVerifier.create(movieController.search("lord", "contains", null, null, "\"movies-6\""))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getStatusCode() == HttpStatus.OK
+                        && response.getBody().equals(Arrays.asList(movie)))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findAll returns the page without ETag when there is no change counter")
+    public void findAll_ReturnPageWithoutETag_WhenThereIsNoChangeCounter() {
+        BDDMockito.when(movieServiceMock.changeCounter())
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(movieController.findAll(null, null, "*"))
+                .expectSubscription()
+                .expectNextMatches(response -> response.getStatusCode() == HttpStatus.OK
+                        && response.getHeaders().getETag() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("changes sends each movie change as a server-sent event named after its type")
+    public void changes_ReturnServerSentEventsNamedAfterType_WhenSuccessful() {
+        MovieChangeEvent deleted = MovieChangeEvent.builder().type(MovieChangeEvent.DELETE).id(1L).build();
+        BDDMockito.when(movieChangeFeedMock.changes())
+                .thenReturn(Flux.just(deleted, MovieChangeEvent.resync()));
+        BDDMockito.when(movieChangeFeedMock.heartbeats())
+                .thenReturn(Flux.never());
+
+        StepVerifier.create(movieController.changes())
+                .expectSubscription()
+                .expectNextMatches(event -> "delete".equals(event.event()) && deleted.equals(event.data()))
+                .expectNextMatches(event -> "resync".equals(event.event()))
+                .thenCancel()
+                .verify();
+    }
+
+    @Test
+    @DisplayName("update sends the If-Match version to the service and returns precondition failed on conflict")
+    public void update_ReturnPreconditionFailed_WhenIfMatchVersionIsOutdated() {
+        BDDMockito.when(movieServiceMock.update(MovieCreator.createValidMovie().withVersion(2L)))
+                .thenReturn(Mono.error(new ResponseStatusException(HttpStatus.CONFLICT)));
+
+        StepVerifier.create(movieController.update(1L, "\"1-2\"", MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.PRECONDITION_FAILED)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("update with If-Match * returns precondition failed when the movie does not exist")
+    public void update_ReturnPreconditionFailed_WhenIfMatchIsWildcardAndMovieDoesNotExist() {
+        BDDMockito.when(movieServiceMock.update(MovieCreator.createValidMovie()))
+                .thenReturn(Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND)));
+
+        StepVerifier.create(movieController.update(1L, "*", MovieCreator.createValidMovie().withVersion(2L)))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.PRECONDITION_FAILED)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("update returns precondition failed when If-Match is the ETag of another movie")
+    public void update_ReturnPreconditionFailed_WhenIfMatchIsFromAnotherMovie() {
+        StepVerifier.create(movieController.update(1L, "\"2-0\"", MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.PRECONDITION_FAILED)
+                .verify();
+
+        BDDMockito.verify(movieServiceMock, Mockito.never()).update(ArgumentMatchers.any(Movie.class));
+    }
+
+    @Test
+    @DisplayName("update returns precondition failed when If-Match is a weak ETag")
+    public void update_ReturnPreconditionFailed_WhenIfMatchIsWeak() {
+        StepVerifier.create(movieController.update(1L, "W/\"1-2\"", MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        BDDMockito.verify(movieServiceMock, Mockito.never()).update(ArgumentMatchers.any(Movie.class));
+    }
+
 
 
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.br.springwebflux.controller;
+
+import com.br.springwebflux.exception.StacklessResponseStatusException;
+import com.br.springwebflux.model.ChunkResult;
+import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MoviePage;
+import com.br.springwebflux.model.MovieSearchRequest;
+import com.br.springwebflux.service.MovieService;
+import com.br.springwebflux.util.MovieCreator;
+import io.rsocket.exceptions.ApplicationErrorException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.Arrays;
+
+@ExtendWith(SpringExtension.class)
+class MovieRSocketControllerTest {
+
+    @InjectMocks
+    private MovieRSocketController movieRSocketController;
+
+    @Mock
+    private MovieService movieServiceMock;
+
+    private final Movie movie = MovieCreator.createValidMovie();
+
+    @Test
+    @DisplayName("findById returns the movie from the service")
+    public void findById_ReturnMonoMovie_WhenSuccessful() {
+        BDDMockito.when(movieServiceMock.findById(1L))
+                .thenReturn(Mono.just(movie));
+
+        StepVerifier.create(movieRSocketController.findById(1L))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("streamAfter streams the movies after the cursor taken from the route")
+    public void streamAfter_ReturnFluxOfMovie_WhenSuccessful() {
+        BDDMockito.when(movieServiceMock.stream(5L))
+                .thenReturn(Flux.just(movie));
+
+        StepVerifier.create(movieRSocketController.streamAfter(5L))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search streams the movies of the page one by one")
+    public void search_ReturnFluxOfMovie_WhenSuccessful() {
+        Movie other = movie.withId(2L);
+        BDDMockito.when(movieServiceMock.search("lord", "contains", null, 2))
+                .thenReturn(Mono.just(new MoviePage(Arrays.asList(movie, other), 2L)));
+
+        StepVerifier.create(movieRSocketController.search(MovieSearchRequest.builder().q("lord").mode("contains").limit(2).build()))
+                .expectSubscription()
+                .expectNext(movie, other)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("save writes the channel through ingest and returns each chunk result")
+    public void save_ReturnChunkResults_WhenSuccessful() {
+        Flux<Movie> movies = Flux.just(MovieCreator.createMovieToSave());
+        ChunkResult result = ChunkResult.builder().chunk(0).size(1).inserted(1).firstId(1L).lastId(1L).build();
+        BDDMockito.when(movieServiceMock.ingest(movies))
+                .thenReturn(Flux.just(result));
+
+        StepVerifier.create(movieRSocketController.save(movies))
+                .expectSubscription()
+                .expectNext(result)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("handleResponseStatus turns the status exception into an application error with status and reason")
+    public void handleResponseStatus_ReturnApplicationError_WhenMovieIsNotFound() {
+        StepVerifier.create(movieRSocketController.handleResponseStatus(
+                new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found")))
+                .expectErrorMatches(e -> e instanceof ApplicationErrorException
+                        && "404 movie not found".equals(e.getMessage()))
+                .verify();
+    }
+}
@@ -0,0 +1,104 @@
+package com.br.springwebflux.exception;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.web.ResourceProperties;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+class GlobalExceptionHandlerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SimpleMeterRegistry meterRegistry;
+    private GlobalExceptionHandler handler;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        handler = new GlobalExceptionHandler(new CustomAttributes(), new ResourceProperties(),
+                new StaticApplicationContext(), ServerCodecConfigurer.create(), meterRegistry);
+        handler.afterPropertiesSet();
+    }
+
+    private MockServerWebExchange handle(String path, Throwable error) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get(path));
+        handler.handle(exchange, error).block();
+        return exchange;
+    }
+
+    private Map<String, Object> body(MockServerWebExchange exchange) throws Exception {
+        return objectMapper.readValue(exchange.getResponse().getBodyAsString().block(),
+                new TypeReference<Map<String, Object>>() {});
+    }
+
+    @Test
+    @DisplayName("stackless exceptions have no stack trace")
+    public void stacklessException_HasNoStackTrace() {
+        StacklessResponseStatusException exception = new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found");
+
+        Assertions.assertEquals(0, exception.getStackTrace().length);
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, exception.getStatus());
+    }
+
+    @Test
+    @DisplayName("pre-rendered error body is the same as the one built from the error attributes")
+    public void handle_RendersSameBody_WhenTemplateIsCached() throws Exception {
+        String path = "/movies/1\"\\x";
+        MockServerWebExchange regular = handle(path, new ResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+        //a primeira passa pelo caminho normal e gera o template, a segunda usa o template
+        handle(path, new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+        MockServerWebExchange cached = handle(path, new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+
+        Map<String, Object> expected = body(regular);
+        Map<String, Object> actual = body(cached);
+        Assertions.assertEquals(HttpStatus.NOT_FOUND, cached.getResponse().getStatusCode());
+        Assertions.assertEquals(MediaType.APPLICATION_JSON, cached.getResponse().getHeaders().getContentType());
+        Assertions.assertEquals(cached.getRequest().getId(), actual.get("requestId"));
+        Assertions.assertNotNull(actual.get("timestamp"));
+        Assertions.assertEquals(expected.keySet().toString(), actual.keySet().toString());
+        expected.remove("timestamp");
+        expected.remove("requestId");
+        actual.remove("timestamp");
+        actual.remove("requestId");
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    @DisplayName("pre-rendered error bodies are kept per status and message")
+    public void handle_RendersEachMessage_WhenTemplatesAreCached() throws Exception {
+        handle("/movies/1", new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+        handle("/movies/1", new StacklessResponseStatusException(HttpStatus.CONFLICT, "movie was modified by another request"));
+
+        MockServerWebExchange conflict = handle("/movies/1",
+                new StacklessResponseStatusException(HttpStatus.CONFLICT, "movie was modified by another request"));
+
+        Map<String, Object> body = body(conflict);
+        Assertions.assertEquals(409, body.get("status"));
+        Assertions.assertEquals("/movies/1", body.get("path"));
+        Assertions.assertTrue(((String) body.get("message")).contains("movie was modified by another request"));
+    }
+
+    @Test
+    @DisplayName("pre-rendered error bodies are still counted in the errors metric")
+    public void handle_CountsError_WhenTemplateIsCached() {
+        handle("/movies/1", new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+        handle("/movies/1", new StacklessResponseStatusException(HttpStatus.NOT_FOUND, "movie not found"));
+
+        Assertions.assertEquals(2.0, meterRegistry.get(GlobalExceptionHandler.ERRORS_METRIC)
+                .tag("status", "404")
+                .counter()
+                .count());
+    }
+}
@@ -1,5 +1,7 @@
 package com.br.springwebflux.integration;
 
+import com.br.springwebflux.config.CodecConfig;
+import com.br.springwebflux.model.ChunkResult;
 import com.br.springwebflux.model.Movie;
 import com.br.springwebflux.repository.MovieRepository;
 import com.br.springwebflux.util.MovieCreator;
@@ -14,10 +16,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithUserDetails;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -27,6 +32,7 @@ import reactor.blockhound.BlockingOperationError;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
 
 @ExtendWith(SpringExtension.class)
 //@WebFluxTest //vai inicializar o conteúdo relacionado ao webflux
@@ -74,7 +80,7 @@ public class MovieControllerIntegration {
 
     @BeforeEach
     public void setUp() {
-        BDDMockito.when(movieRepositoryMock.findAll())
+        BDDMockito.when(movieRepositoryMock.findPageAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(movie));
 
         BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
@@ -84,14 +90,17 @@ public class MovieControllerIntegration {
                 .thenReturn(Mono.just(movie));
 
         BDDMockito.when(movieRepositoryMock
-                .saveAll(Arrays.asList(MovieCreator.createMovieToSave(), MovieCreator.createMovieToSave())))
+                .insertAll(Arrays.asList(MovieCreator.createMovieToSave(), MovieCreator.createMovieToSave())))
                 .thenReturn(Flux.just(movie, movie));
 
-        BDDMockito.when(movieRepositoryMock.delete(ArgumentMatchers.any(Movie.class)))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.deleteMovieById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(1));
 
-        BDDMockito.when(movieRepositoryMock.save(MovieCreator.createValidMovie()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.updateTitle(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(1L));
+
+        BDDMockito.when(movieRepositoryMock.findChangeCounter())
+                .thenReturn(Mono.just(7L));
 
     }
 
@@ -126,6 +135,45 @@ public class MovieControllerIntegration {
                 .jsonPath("$.[0].title").isEqualTo(movie.getTitle());
     }
 
+    @Test
+    @DisplayName("listAll returns the next cursor header when there are more movies than the limit")
+    @WithUserDetails(ADMIN_USER)
+    public void listAll_ReturnNextCursor_WhenThereIsNextPage() {
+        BDDMockito.when(movieRepositoryMock.findPageAfter(0L, 2))
+                .thenReturn(Flux.just(movie, movie.withId(2L)));
+
+        testClient
+                .get()
+                .uri("/movies?limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("X-Next-Cursor", "1")
+                .expectBodyList(Movie.class)
+                .hasSize(1)
+                .contains(movie);
+    }
+
+    @Test
+    @DisplayName("listAll streams movies as NDJSON when the client accepts application/x-ndjson")
+    @WithUserDetails(REGULAR_USER)
+    public void listAll_StreamsNdjson_WhenAcceptIsNdjson() {
+        BDDMockito.when(movieRepositoryMock.streamAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt()))
+                .thenReturn(Flux.just(movie, movie));
+
+        testClient
+                .get()
+                .uri("/movies")
+                .accept(CodecConfig.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(CodecConfig.APPLICATION_NDJSON)
+                .returnResult(Movie.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNext(movie, movie)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("findById returns a Mono with movie when it exists and user is successfully authenticated and has role USER")
     @WithUserDetails(REGULAR_USER)
@@ -216,21 +264,38 @@ public class MovieControllerIntegration {
     public void saveBatch_ReturnsMonoError_WhenContainsInvalidName() {
         Movie movieToSave = MovieCreator.createMovieToSave();
 
-        BDDMockito.when(movieRepositoryMock
-                .saveAll(ArgumentMatchers.anyIterable()))
-                .thenReturn(Flux.just(movie, movie.withTitle("")));
-
         testClient
                 .post()
                 .uri("/movies/batch")
                 .contentType(MediaType.APPLICATION_JSON)
-                .body(BodyInserters.fromValue(Arrays.asList(movieToSave, movieToSave)))
+                .body(BodyInserters.fromValue(Arrays.asList(movieToSave, movieToSave.withTitle(""))))
                 .exchange()
                 .expectStatus().isBadRequest()
                 .expectBody()
                 .jsonPath("$.status").isEqualTo(400);
     }
 
+    @Test
+    @DisplayName("saveBatch imports NDJSON in chunks and reports each chunk when user is successfully authenticated and has role ADMIN")
+    @WithUserDetails(ADMIN_USER)
+    public void saveBatch_ImportsNdjson_WhenContentTypeIsNdjson() {
+        Movie movieToSave = MovieCreator.createMovieToSave();
+
+        testClient
+                .post()
+                .uri("/movies/batch")
+                .contentType(CodecConfig.APPLICATION_NDJSON)
+                .accept(CodecConfig.APPLICATION_NDJSON)
+                .body(Flux.just(movieToSave, movieToSave), Movie.class)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ChunkResult.class)
+                .getResponseBody()
+                .as(StepVerifier::create)
+                .expectNextMatches(result -> result.getInserted() == 2 && result.getError() == null)
+                .verifyComplete();
+    }
+
     @Test
     @DisplayName("delete removes the movie when successful and user is successfully authenticated and has role ADMIN")
     @WithUserDetails(ADMIN_USER)
@@ -246,8 +311,8 @@ public class MovieControllerIntegration {
     @DisplayName("delete returns Mono error when movie does not exist and user is successfully authenticated and has role ADMIN")
     @WithUserDetails(ADMIN_USER)
     public void delete_ReturnMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.deleteMovieById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(0));
 
         testClient
                 .delete()
@@ -269,14 +334,15 @@ public class MovieControllerIntegration {
                 .contentType(MediaType.APPLICATION_JSON)
                 .body(BodyInserters.fromValue(movie))
                 .exchange()
-                .expectStatus().isNoContent();
+                .expectStatus().isNoContent()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-1\"");
     }
 
     @Test
     @DisplayName("update returns Mono error when movie does not exist and user is successfully authenticated and has role ADMIN")
     @WithUserDetails(ADMIN_USER)
     public void update_ReturnMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
+        BDDMockito.when(movieRepositoryMock.updateTitle(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString()))
                 .thenReturn(Mono.empty());
 
         testClient.put()
@@ -289,4 +355,81 @@ public class MovieControllerIntegration {
                 .jsonPath("$.status").isEqualTo(404)
                 .jsonPath("$.developerMessage").isEqualTo("A ResponseStatusException Happened");
     }
+
+    @Test
+    @DisplayName("update returns precondition failed when If-Match does not match the current version and user is successfully authenticated and has role ADMIN")
+    @WithUserDetails(ADMIN_USER)
+    public void update_ReturnPreconditionFailed_WhenIfMatchIsOutdated() {
+        BDDMockito.when(movieRepositoryMock.updateTitleIfVersion(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString(), ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.existsById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(true));
+
+        testClient.put()
+                .uri("/movies/{id}", 1)
+                .header(HttpHeaders.IF_MATCH, "\"1-2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(BodyInserters.fromValue(movie))
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.PRECONDITION_FAILED)
+                .expectBody()
+                .jsonPath("$.status").isEqualTo(412);
+    }
+
+    @Test
+    @DisplayName("findById returns not modified without body when If-None-Match matches the movie version and user is successfully authenticated and has role USER")
+    @WithUserDetails(REGULAR_USER)
+    public void findById_ReturnNotModified_WhenIfNoneMatchMatchesVersion() {
+        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(movie.withVersion(3L)));
+
+        testClient.get()
+                .uri("/movies/{id}", 1)
+                .header(HttpHeaders.IF_NONE_MATCH, "\"1-3\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1-3\"")
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    @DisplayName("listAll returns not modified without reading the page when If-None-Match matches the change counter and user is successfully authenticated and has role ADMIN")
+    @WithUserDetails(ADMIN_USER)
+    public void listAll_ReturnNotModified_WhenIfNoneMatchMatchesChangeCounter() {
+        testClient.get()
+                .uri("/movies")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"movies-7\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"movies-7\"")
+                .expectBody().isEmpty();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never())
+                .findPageAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt());
+    }
+
+    @Test
+    @DisplayName("prometheus scrape exposes request histograms, service flows, repository timings and error counts")
+    @WithUserDetails(ADMIN_USER)
+    public void prometheus_ExposesInstrumentation_AfterRequests() {
+        testClient.get().uri("/movies/{id}", 1).exchange().expectStatus().isOk();
+        testClient.get().uri("/movies/{id}", "x").exchange().expectStatus().isBadRequest();
+
+        String scrape = testClient.get()
+                .uri("/actuator/prometheus")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class)
+                .returnResult()
+                .getResponseBody();
+
+        Assertions.assertNotNull(scrape);
+        Assertions.assertTrue(scrape.contains("http_server_requests_seconds_bucket{"));
+        Assertions.assertTrue(scrape.contains("uri=\"/movies/{id}\""));
+        Assertions.assertTrue(scrape.contains("reactor_flow_duration_seconds_bucket{"));
+        Assertions.assertTrue(scrape.contains("method=\"findById\""));
+        Assertions.assertTrue(scrape.contains("spring_data_repository_invocations_seconds_count{"));
+        Assertions.assertTrue(scrape.contains("repository=\"UserRepository\""));
+        Assertions.assertTrue(scrape.contains("http_server_errors_total{exception=\"ServerWebInputException\",status=\"400\""));
+    }
 }
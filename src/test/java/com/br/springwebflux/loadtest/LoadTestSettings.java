@@ -0,0 +1,71 @@
+package com.br.springwebflux.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.StringUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+//opções do MovieLoadRunner, lidas dos mesmos argumentos --loadtest.* que vão para a aplicação
+@Data
+public class LoadTestSettings {
+
+    public static final String PREFIX = "loadtest";
+
+    public enum Auth {BASIC, TOKEN}
+
+    //usuários virtuais, cada um só manda a próxima requisição quando a anterior termina
+    private int concurrency = 32;
+    //tempo descartado antes da medição: JIT, pool de conexões e caches
+    private Duration warmup = Duration.ofSeconds(10);
+    private Duration duration = Duration.ofSeconds(30);
+    //peso de cada operação, ex.: read=70,page=10,search=10,write=10
+    private String mix = "read=70,page=10,search=10,write=10";
+    private Auth auth = Auth.BASIC;
+    //filmes garantidos na tabela antes de começar
+    private int movies = 10_000;
+    //vazio sobe um Postgres embutido; preenchido usa esse banco (ex.: r2dbc:postgresql://localhost:5432/webflux)
+    private String r2dbcUrl;
+    private Path reportDir = Paths.get("target", "loadtest");
+
+    public static LoadTestSettings from(String[] args) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        LoadTestSettings settings = new LoadTestSettings();
+        new Binder(ConfigurationPropertySources.get(environment)).bind(PREFIX, Bindable.ofInstance(settings));
+        return settings;
+    }
+
+    public boolean isEmbeddedDatabase() {
+        return !StringUtils.hasText(r2dbcUrl);
+    }
+
+    public Map<MovieLoadRunner.Operation, Integer> weights() {
+        Map<MovieLoadRunner.Operation, Integer> weights = new EnumMap<>(MovieLoadRunner.Operation.class);
+        for (String entry : StringUtils.commaDelimitedListToStringArray(mix)) {
+            String[] pair = entry.split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("invalid loadtest.mix entry: " + entry);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                weights.put(MovieLoadRunner.Operation.valueOf(pair[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("loadtest.mix has no operation with weight > 0");
+        }
+        if (weights.containsKey(MovieLoadRunner.Operation.AUTH) && auth != Auth.TOKEN) {
+            throw new IllegalArgumentException("the auth operation needs --loadtest.auth=token");
+        }
+        return weights;
+    }
+}
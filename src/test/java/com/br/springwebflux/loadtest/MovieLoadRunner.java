@@ -0,0 +1,321 @@
+package com.br.springwebflux.loadtest;
+
+import com.br.springwebflux.SpringWebfluxApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.r2dbc.core.DatabaseClient;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+//teste de carga de ponta a ponta: sobe a aplicação numa porta aleatória contra um Postgres embutido
+//(ou o banco de --loadtest.r2dbc-url), popula usuários e filmes e roda a mistura de operações
+//com usuários virtuais em loop fechado; a latência de cada operação vai para um HdrHistogram
+//o resultado sai no console e em target/loadtest/<data>/ (summary.csv e um .hgrm por operação)
+//para comparar builds diferentes
+//mvn -Ploadtest test-compile exec:exec -Dloadtest.concurrency=64 -Dloadtest.mix=read=80,write=20
+//o Postgres embutido (initdb) não roda como root, nesse caso use -Dloadtest.r2dbc-url
+//qualquer outro argumento --chave=valor vai para a aplicação, ex.: --auth.credential-cache.enabled=false
+@Slf4j
+public class MovieLoadRunner {
+
+    static final String PASSWORD = "loadtest";
+    static final String USER = "loadtest-user";
+    static final String ADMIN = "loadtest-admin";
+
+    public enum Operation {
+        READ, PAGE, SEARCH, WRITE, AUTH
+    }
+
+    private final LoadTestSettings settings;
+    private final WebClient client;
+    private final String userAuthorization;
+    private final String adminAuthorization;
+    private final long minId;
+    private final long maxId;
+    private final Operation[] schedule;
+
+    MovieLoadRunner(LoadTestSettings settings, WebClient client, String userAuthorization,
+                    String adminAuthorization, long minId, long maxId) {
+        this.settings = settings;
+        this.client = client;
+        this.userAuthorization = userAuthorization;
+        this.adminAuthorization = adminAuthorization;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.schedule = schedule(settings.weights());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestSettings settings = LoadTestSettings.from(args);
+        settings.weights();
+        //o restart do devtools roda a aplicação em outra thread e descarta os beans que o runner já pegou
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        EmbeddedPostgres postgres = settings.isEmbeddedDatabase() ? EmbeddedPostgres.start() : null;
+        try {
+            //propriedades do sistema ganham do application.yml, argumentos da linha de comando ganham delas
+            applicationProperties(settings, postgres).forEach(System::setProperty);
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringWebfluxApplication.class)
+                    .run(args);
+            try {
+                run(settings, context);
+            } finally {
+                context.close();
+            }
+        } finally {
+            if (postgres != null) {
+                postgres.close();
+            }
+        }
+    }
+
+    private static Map<String, String> applicationProperties(LoadTestSettings settings, EmbeddedPostgres postgres) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        //o application.yml dos testes vem antes no classpath: volta o que ele muda em relação ao de produção
+        properties.put("movies.schema.initialize", "true");
+        properties.put("movies.cache.enabled", "true");
+        properties.put("database.pool.warmup", "true");
+        if (postgres != null) {
+            properties.put("spring.r2dbc.url", "r2dbc:postgresql://localhost:" + postgres.getPort() + "/postgres");
+            properties.put("spring.r2dbc.username", "postgres");
+            properties.put("spring.r2dbc.password", "postgres");
+        } else {
+            properties.put("spring.r2dbc.url", settings.getR2dbcUrl());
+        }
+        //o log de cada query em DEBUG custaria mais que a própria query
+        properties.put("logging.level.org.springframework.data.r2dbc", "INFO");
+        //o pool precisa atender todos os usuários virtuais, senão a medição vira fila do pool
+        properties.put("database.pool.max-size", String.valueOf(Math.max(20, settings.getConcurrency())));
+        if (settings.getAuth() == LoadTestSettings.Auth.TOKEN) {
+            properties.put("auth.token.enabled", "true");
+            properties.put("auth.token.secret", UUID.randomUUID().toString() + UUID.randomUUID());
+            properties.put("auth.token.ttl", "1h");
+        }
+        return properties;
+    }
+
+    static void run(LoadTestSettings settings, ConfigurableApplicationContext context) throws IOException {
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        DatabaseClient databaseClient = context.getBean(DatabaseClient.class);
+        PasswordEncoder passwordEncoder = context.getBean(PasswordEncoder.class);
+
+        seedUser(databaseClient, passwordEncoder, USER, "ROLE_USER");
+        seedUser(databaseClient, passwordEncoder, ADMIN, "ROLE_USER,ROLE_ADMIN");
+        long[] ids = seedMovies(databaseClient, settings.getMovies());
+
+        ConnectionProvider connections = ConnectionProvider.builder("loadtest")
+                .maxConnections(settings.getConcurrency())
+                .pendingAcquireMaxCount(-1)
+                .build();
+        try {
+            WebClient client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .build();
+            String userAuthorization = authorization(client, settings, USER);
+            String adminAuthorization = authorization(client, settings, ADMIN);
+            MovieLoadRunner runner = new MovieLoadRunner(settings, client, userAuthorization, adminAuthorization, ids[0], ids[1]);
+
+            log.info("Warming up for {} with {} virtual users", settings.getWarmup(), settings.getConcurrency());
+            runner.runPhase(settings.getWarmup());
+            log.info("Measuring for {} with mix {}", settings.getDuration(), settings.getMix());
+            long start = System.nanoTime();
+            Map<Operation, OperationStats> stats = runner.runPhase(settings.getDuration());
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            report(stats, seconds, System.out);
+            Path reportDir = writeReport(settings, stats, seconds);
+            log.info("Report written to {}", reportDir.toAbsolutePath());
+        } finally {
+            connections.disposeLater().block();
+        }
+    }
+
+    private static void seedUser(DatabaseClient databaseClient, PasswordEncoder passwordEncoder,
+                                 String username, String authorities) {
+        databaseClient.execute("INSERT INTO user_table (name, username, password, authorities) " +
+                "VALUES (:username, :username, :password, :authorities) " +
+                "ON CONFLICT (username) DO UPDATE SET password = EXCLUDED.password, authorities = EXCLUDED.authorities")
+                .bind("username", username)
+                .bind("password", passwordEncoder.encode(PASSWORD))
+                .bind("authorities", authorities)
+                .then()
+                .block();
+    }
+
+    //completa a tabela até a quantidade pedida e devolve o menor e o maior id
+    private static long[] seedMovies(DatabaseClient databaseClient, int movies) {
+        Long existing = databaseClient.execute("SELECT count(*) AS total FROM movie")
+                .map(row -> row.get("total", Long.class))
+                .one()
+                .block();
+        long missing = movies - Objects.requireNonNull(existing);
+        if (missing > 0) {
+            databaseClient.execute("INSERT INTO movie (title) SELECT 'movie ' || g FROM generate_series(1, :missing) g")
+                    .bind("missing", missing)
+                    .then()
+                    .block();
+        }
+        return databaseClient.execute("SELECT min(id) AS min_id, max(id) AS max_id FROM movie")
+                .map(row -> new long[]{row.get("min_id", Long.class), row.get("max_id", Long.class)})
+                .one()
+                .block();
+    }
+
+    private static String authorization(WebClient client, LoadTestSettings settings, String username) {
+        String basic = basic(username);
+        if (settings.getAuth() == LoadTestSettings.Auth.BASIC) {
+            return basic;
+        }
+        return "Bearer " + client.post()
+                .uri("/auth/token")
+                .header(HttpHeaders.AUTHORIZATION, basic)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .map(token -> (String) token.get("accessToken"))
+                .block();
+    }
+
+    private static String basic(String username) {
+        return "Basic " + Base64.getEncoder().encodeToString((username + ":" + PASSWORD).getBytes(UTF_8));
+    }
+
+    //cada operação ocupa no vetor a quantidade de posições do seu peso, o sorteio é um índice aleatório
+    private static Operation[] schedule(Map<Operation, Integer> weights) {
+        return weights.entrySet().stream()
+                .flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream())
+                .toArray(Operation[]::new);
+    }
+
+    Map<Operation, OperationStats> runPhase(Duration duration) {
+        Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+        for (Operation operation : schedule) {
+            stats.computeIfAbsent(operation, key -> new OperationStats());
+        }
+        long end = System.nanoTime() + duration.toNanos();
+        Flux.range(0, settings.getConcurrency())
+                .flatMap(virtualUser -> Mono.defer(() -> execute(stats))
+                        .repeat(() -> System.nanoTime() < end), settings.getConcurrency())
+                .blockLast();
+        return stats;
+    }
+
+    private Mono<Void> execute(Map<Operation, OperationStats> stats) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Operation operation = schedule[random.nextInt(schedule.length)];
+        OperationStats operationStats = stats.get(operation);
+        long start = System.nanoTime();
+        return request(operation, random)
+                .exchange()
+                .flatMap(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+                .doOnNext(status -> operationStats.record(start, status))
+                .doOnError(e -> operationStats.recordFailure(start))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    private WebClient.RequestHeadersSpec<?> request(Operation operation, ThreadLocalRandom random) {
+        long id = random.nextLong(minId, maxId + 1);
+        switch (operation) {
+            case READ:
+                return client.get().uri("/movies/{id}", id)
+                        .header(HttpHeaders.AUTHORIZATION, userAuthorization);
+            case PAGE:
+                return client.get().uri("/movies?after={after}", id)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.AUTHORIZATION, userAuthorization);
+            case SEARCH:
+                return client.get().uri("/movies/search?q={q}&mode=prefix", "movie " + random.nextInt(1, 1000))
+                        .header(HttpHeaders.AUTHORIZATION, userAuthorization);
+            case WRITE:
+                return client.put().uri("/movies/{id}", id)
+                        .header(HttpHeaders.AUTHORIZATION, adminAuthorization)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .bodyValue(Collections.singletonMap("title", "movie " + id + " updated"));
+            case AUTH:
+                return client.post().uri("/auth/token")
+                        .header(HttpHeaders.AUTHORIZATION, basic(USER));
+            default:
+                throw new IllegalStateException("unknown operation " + operation);
+        }
+    }
+
+    static void report(Map<Operation, OperationStats> stats, double seconds, PrintStream out) {
+        out.printf("%n%-8s %10s %10s %8s %8s %10s %10s %10s %10s%n",
+                "op", "requests", "req/s", "4xx", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        long total = 0;
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats operationStats = entry.getValue();
+            Histogram latency = operationStats.latency();
+            total += operationStats.requests();
+            out.printf("%-8s %10d %10.1f %8d %8d %10.2f %10.2f %10.2f %10.2f%n",
+                    entry.getKey().name().toLowerCase(), operationStats.requests(), operationStats.requests() / seconds,
+                    operationStats.clientErrors(), operationStats.errors(),
+                    millis(latency, 50), millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / 1000.0);
+        }
+        out.printf("%-8s %10d %10.1f%n%n", "total", total, total / seconds);
+    }
+
+    private static double millis(Histogram latency, double percentile) {
+        return latency.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static Path writeReport(LoadTestSettings settings, Map<Operation, OperationStats> stats,
+                                    double seconds) throws IOException {
+        Path dir = settings.getReportDir()
+                .resolve(LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")));
+        Files.createDirectories(dir);
+        try (PrintWriter summary = new PrintWriter(Files.newBufferedWriter(dir.resolve("summary.csv")))) {
+            summary.println("operation,concurrency,mix,auth,requests,throughput,client_errors,errors,p50_ms,p99_ms,p999_ms,max_ms");
+            for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+                OperationStats operationStats = entry.getValue();
+                Histogram latency = operationStats.latency();
+                summary.printf(Locale.ROOT, "%s,%d,\"%s\",%s,%d,%.1f,%d,%d,%.3f,%.3f,%.3f,%.3f%n",
+                        entry.getKey().name().toLowerCase(), settings.getConcurrency(), settings.getMix(),
+                        settings.getAuth().name().toLowerCase(), operationStats.requests(),
+                        operationStats.requests() / seconds, operationStats.clientErrors(), operationStats.errors(),
+                        millis(latency, 50), millis(latency, 99), millis(latency, 99.9), latency.getMaxValue() / 1000.0);
+            }
+        }
+        //formato do HdrHistogram, pode ser plotado junto com o de outro build
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            try (PrintStream hgrm = new PrintStream(Files.newOutputStream(
+                    dir.resolve(entry.getKey().name().toLowerCase() + ".hgrm")), false, UTF_8.name())) {
+                entry.getValue().latency().outputPercentileDistribution(hgrm, 1000.0);
+            }
+        }
+        return dir;
+    }
+}
@@ -0,0 +1,50 @@
+package com.br.springwebflux.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+//latência (em microssegundos) e resultado das requisições de uma operação durante uma fase
+class OperationStats {
+
+    private final Histogram latency = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(1), 3);
+    private final LongAdder clientErrors = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    void record(long startNanos, int status) {
+        latency.recordValue(Math.min(elapsedMicros(startNanos), latency.getHighestTrackableValue()));
+        if (status >= 500) {
+            errors.increment();
+        } else if (status >= 400) {
+            clientErrors.increment();
+        }
+    }
+
+    //timeout, conexão recusada: não há status, conta como erro
+    void recordFailure(long startNanos) {
+        latency.recordValue(Math.min(elapsedMicros(startNanos), latency.getHighestTrackableValue()));
+        errors.increment();
+    }
+
+    private static long elapsedMicros(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    }
+
+    Histogram latency() {
+        return latency;
+    }
+
+    long requests() {
+        return latency.getTotalCount();
+    }
+
+    long clientErrors() {
+        return clientErrors.sum();
+    }
+
+    long errors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,47 @@
+package com.br.springwebflux.model;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+class UserTest {
+
+    @Test
+    @DisplayName("getAuthorities parses the comma separated authorities")
+    public void getAuthorities_ReturnsParsedAuthorities() {
+        User user = new User(1L, "Admin", "admin", "{bcrypt}hash", "ROLE_USER, ROLE_ADMIN,");
+
+        Assertions.assertEquals(AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"),
+                new ArrayList<>(user.getAuthorities()));
+    }
+
+    @Test
+    @DisplayName("getAuthorities shares one immutable list between calls and users")
+    public void getAuthorities_ReturnsSharedImmutableList() {
+        User admin = new User(1L, "Admin", "admin", "{bcrypt}hash", "ROLE_USER,ROLE_ADMIN");
+        User otherAdmin = new User(2L, "Other", "other", "{bcrypt}hash", "ROLE_USER,ROLE_ADMIN");
+        User user = new User(3L, "User", "user", "{bcrypt}hash", "ROLE_USER");
+
+        Assertions.assertSame(admin.getAuthorities(), admin.getAuthorities());
+        Assertions.assertSame(admin.getAuthorities(), otherAdmin.getAuthorities());
+        Assertions.assertSame(admin.getAuthorities().iterator().next(), user.getAuthorities().iterator().next());
+        @SuppressWarnings("unchecked")
+        Collection<GrantedAuthority> authorities = (Collection<GrantedAuthority>) admin.getAuthorities();
+        Assertions.assertThrows(UnsupportedOperationException.class, authorities::clear);
+    }
+
+    @Test
+    @DisplayName("getAuthorities returns an empty list when the user has no authorities")
+    public void getAuthorities_ReturnsEmptyList_WhenAuthoritiesIsNull() {
+        User user = new User(1L, "Admin", "admin", "{bcrypt}hash", null);
+
+        List<GrantedAuthority> expected = new ArrayList<>();
+        Assertions.assertEquals(expected, new ArrayList<>(user.getAuthorities()));
+    }
+}
@@ -0,0 +1,179 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.model.MovieChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.r2dbc.postgresql.api.Notification;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.DirectProcessor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class MovieChangeFeedTest {
+
+    private final DirectProcessor<MovieChangeEvent> source = DirectProcessor.create();
+    private final FluxSink<MovieChangeEvent> sink = source.sink();
+    private final AtomicInteger sourceSubscriptions = new AtomicInteger();
+    private SimpleMeterRegistry meterRegistry;
+    private MovieChangeFeed movieChangeFeed;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        MovieProperties movieProperties = new MovieProperties();
+        movieProperties.getChanges().setBufferSize(2);
+        movieChangeFeed = new MovieChangeFeed(source.doOnSubscribe(subscription -> sourceSubscriptions.incrementAndGet()),
+                movieProperties, meterRegistry);
+    }
+
+    @Test
+    @DisplayName("changes delivers each event to every subscriber through a single source subscription")
+    public void changes_FanOutFromSingleSubscription_WhenThereAreManySubscribers() {
+        List<MovieChangeEvent> first = new ArrayList<>();
+        List<MovieChangeEvent> second = new ArrayList<>();
+        Disposable firstSubscription = movieChangeFeed.changes().subscribe(first::add);
+        Disposable secondSubscription = movieChangeFeed.changes().subscribe(second::add);
+
+        MovieChangeEvent created = event(MovieChangeEvent.CREATE, 1L);
+        sink.next(created);
+        firstSubscription.dispose();
+        secondSubscription.dispose();
+
+        Assertions.assertEquals(Collections.singletonList(created), first);
+        Assertions.assertEquals(Collections.singletonList(created), second);
+        Assertions.assertEquals(1, sourceSubscriptions.get());
+    }
+
+    @Test
+    @DisplayName("changes sends a resync after the buffered events when the subscriber buffer overflows")
+    public void changes_SendResync_WhenSubscriberBufferOverflows() {
+        MovieChangeEvent created = event(MovieChangeEvent.CREATE, 1L);
+        MovieChangeEvent updated = event(MovieChangeEvent.UPDATE, 1L);
+        MovieChangeEvent afterResync = event(MovieChangeEvent.DELETE, 4L);
+
+        StepVerifier.create(movieChangeFeed.changes(), 0)
+                .expectSubscription()
+                .then(() -> {
+                    sink.next(created);
+                    sink.next(updated);
+                    sink.next(event(MovieChangeEvent.CREATE, 2L));
+                })
+                .thenRequest(10)
+                .expectNext(created, updated)
+                .expectNext(MovieChangeEvent.resync())
+                .then(() -> sink.next(afterResync))
+                .expectNext(afterResync)
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(1.0, meterRegistry.get("movies.changes.resyncs").tag("reason", "overflow").counter().count());
+    }
+
+    @Test
+    @DisplayName("changes keeps recovering from repeated overflows and completes when the source completes")
+    public void changes_SendResyncEachTime_WhenSubscriberBufferOverflowsRepeatedly() {
+        MovieChangeEvent created = event(MovieChangeEvent.CREATE, 1L);
+        MovieChangeEvent updated = event(MovieChangeEvent.UPDATE, 1L);
+
+        StepVerifier.create(movieChangeFeed.changes(), 0)
+                .expectSubscription()
+                .then(() -> {
+                    sink.next(created);
+                    sink.next(updated);
+                    sink.next(event(MovieChangeEvent.CREATE, 2L));
+                })
+                .thenRequest(3)
+                .expectNext(created, updated, MovieChangeEvent.resync())
+                .then(() -> {
+                    sink.next(updated);
+                    sink.next(created);
+                    sink.next(event(MovieChangeEvent.CREATE, 3L));
+                })
+                .thenRequest(10)
+                .expectNext(updated, created, MovieChangeEvent.resync())
+                .then(sink::complete)
+                .verifyComplete();
+
+        Assertions.assertEquals(2.0, meterRegistry.get("movies.changes.resyncs").tag("reason", "overflow").counter().count());
+    }
+
+    @Test
+    @DisplayName("reconnectBackoff starts again from the min delay when the connection drops after it recovered")
+    public void reconnectBackoff_RestartFromMinDelay_WhenConnectionDropsAgainAfterRecovering() {
+        MovieProperties.Changes properties = new MovieProperties().getChanges();
+        List<Long> connectedAt = new ArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+        //3 tentativas recusadas, uma conexão que entrega o resync e cai, e uma que fica de pé
+        Flux<MovieChangeEvent> connection = Flux.defer(() -> {
+            connectedAt.add(Schedulers.parallel().now(TimeUnit.MILLISECONDS));
+            int attempt = attempts.incrementAndGet();
+            if (attempt <= 3) {
+                return Flux.error(new IOException("connection refused"));
+            }
+            Flux<MovieChangeEvent> afterResync = attempt == 4 ? Flux.error(new IOException("connection closed")) : Flux.never();
+            return Flux.just(MovieChangeEvent.resync()).concatWith(afterResync);
+        });
+
+        StepVerifier.withVirtualTime(() -> connection.retryWhen(MovieChangeFeed.reconnectBackoff(properties)))
+                .expectSubscription()
+                .thenAwait(Duration.ofMinutes(1))
+                .expectNext(MovieChangeEvent.resync(), MovieChangeEvent.resync())
+                .thenCancel()
+                .verify();
+
+        Assertions.assertEquals(5, connectedAt.size());
+        //com jitter de 50% o atraso mínimo de 1s fica entre 0.5s e 1.5s; a quarta tentativa seguida esperaria ao menos 4s
+        long afterRecovery = connectedAt.get(4) - connectedAt.get(3);
+        Assertions.assertTrue(afterRecovery <= properties.getMinReconnectDelay().toMillis() * 3 / 2,
+                "reconnected " + afterRecovery + "ms after the recovered connection dropped");
+    }
+
+    @Test
+    @DisplayName("parse reads the notification payload and turns an invalid payload into a resync")
+    public void parse_ReturnResync_WhenPayloadIsInvalid() {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        Assertions.assertEquals(MovieChangeEvent.builder().type(MovieChangeEvent.UPDATE).id(3L).title("Matrix").version(2L).build(),
+                MovieChangeFeed.parse(objectMapper, notification("{\"type\":\"update\",\"id\":3,\"title\":\"Matrix\",\"version\":2}")));
+        Assertions.assertEquals(MovieChangeEvent.resync(),
+                MovieChangeFeed.parse(objectMapper, notification("{\"type\":")));
+    }
+
+    private MovieChangeEvent event(String type, Long id) {
+        return MovieChangeEvent.builder().type(type).id(id).build();
+    }
+
+    private Notification notification(String payload) {
+        return new Notification() {
+            @Override
+            public String getName() {
+                return MovieChangeFeed.CHANNEL;
+            }
+
+            @Override
+            public int getProcessId() {
+                return 1;
+            }
+
+            @Override
+            public String getParameter() {
+                return payload;
+            }
+        };
+    }
+}
@@ -1,15 +1,21 @@
 package com.br.springwebflux.service;
 
+import com.br.springwebflux.config.MovieProperties;
+import com.br.springwebflux.exception.StacklessResponseStatusException;
 import com.br.springwebflux.model.Movie;
+import com.br.springwebflux.model.MovieLookup;
 import com.br.springwebflux.repository.MovieRepository;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.br.springwebflux.util.MovieCreator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -20,6 +26,9 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.BDDMockito;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.web.server.ResponseStatusException;
 import reactor.blockhound.BlockHound;
@@ -40,6 +49,12 @@ class MovieServiceTest {
     @Mock
     private MovieRepository movieRepositoryMock;
 
+    @Spy
+    private MovieProperties movieProperties = new MovieProperties();
+
+    @Spy
+    private MovieCache movieCache = new MovieCache(movieProperties, new SimpleMeterRegistry());
+
     private final Movie movie = MovieCreator.createValidMovie();
 
 
@@ -69,7 +84,7 @@ class MovieServiceTest {
 
     @BeforeEach
     public void setUp() {
-        BDDMockito.when(movieRepositoryMock.findAll())
+        BDDMockito.when(movieRepositoryMock.findPageAfter(ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt()))
                 .thenReturn(Flux.just(movie));
 
         BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
@@ -78,25 +93,124 @@ class MovieServiceTest {
         BDDMockito.when(movieRepositoryMock.save(MovieCreator.createMovieToSave()))
                 .thenReturn(Mono.just(movie));
         BDDMockito.when(movieRepositoryMock
-                .saveAll(Arrays.asList(MovieCreator.createMovieToSave(), MovieCreator.createMovieToSave())))
+                .insertAll(Arrays.asList(MovieCreator.createMovieToSave(), MovieCreator.createMovieToSave())))
                 .thenReturn(Flux.just(movie, movie));
 
-        BDDMockito.when(movieRepositoryMock.delete(ArgumentMatchers.any(Movie.class)))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.deleteMovieById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(1));
 
-        BDDMockito.when(movieRepositoryMock.save(MovieCreator.createValidMovie()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.updateTitle(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString()))
+                .thenReturn(Mono.just(1L));
     }
 
     @Test
-    @DisplayName("findAll returns a flux of movie")
-    public void findAll_ReturnFluxOfMovie_When_Successful(){
+    @DisplayName("findPage returns a page of movies without next cursor when it is the last page")
+    public void findPage_ReturnPageOfMovie_When_Successful(){
         //Step Verifier da um .subscribe no Flux
-        StepVerifier.create(movieService.findAll())
+        StepVerifier.create(movieService.findPage(null, null))
+                .expectSubscription()
+                .expectNextMatches(page -> page.getContent().equals(Arrays.asList(movie)) && page.getNextCursor() == null)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).findPageAfter(0L, movieProperties.getPage().getDefaultSize() + 1);
+    }
+
+    @Test
+    @DisplayName("findPage returns next cursor when there are more movies than the limit")
+    public void findPage_ReturnNextCursor_WhenThereAreMoreMovies(){
+        Movie second = movie.withId(2L);
+        Movie third = movie.withId(3L);
+        BDDMockito.when(movieRepositoryMock.findPageAfter(0L, 3))
+                .thenReturn(Flux.just(movie, second, third));
+
+        StepVerifier.create(movieService.findPage(0L, 2))
+                .expectSubscription()
+                .expectNextMatches(page -> page.getContent().equals(Arrays.asList(movie, second)) && page.getNextCursor() == 2L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("findPage caps the limit at the configured max size")
+    public void findPage_CapsLimit_WhenLimitIsGreaterThanMaxSize(){
+        StepVerifier.create(movieService.findPage(10L, 10_000))
                 .expectSubscription()
-                .expectNext(movie).
-                verifyComplete();
+                .expectNextCount(1)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).findPageAfter(10L, movieProperties.getPage().getMaxSize() + 1);
+    }
 
+    @Test
+    @DisplayName("findPage returns Mono error when limit is not positive")
+    public void findPage_ReturnMonoError_WhenLimitIsNotPositive(){
+        StepVerifier.create(movieService.findPage(null, 0))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("validateSearch rejects the same parameters as search without querying the database")
+    public void validateSearch_ThrowsBadRequest_WhenParametersAreInvalid() {
+        Assertions.assertThrows(ResponseStatusException.class, () -> movieService.validateSearch("lord", "fuzzy", null));
+        Assertions.assertThrows(ResponseStatusException.class, () -> movieService.validateSearch("lord", null, 0));
+        Assertions.assertThrows(ResponseStatusException.class, () -> movieService.validatePage(0));
+        movieService.validateSearch("lord", "contains", 10);
+
+        BDDMockito.verifyNoInteractions(movieRepositoryMock);
+    }
+
+    @Test
+    @DisplayName("stream returns a flux of movie reading the cursor with the configured fetch size")
+    public void stream_ReturnFluxOfMovie_When_Successful(){
+        BDDMockito.when(movieRepositoryMock.streamAfter(0L, movieProperties.getStream().getFetchSize()))
+                .thenReturn(Flux.just(movie, movie));
+
+        StepVerifier.create(movieService.stream(null))
+                .expectSubscription()
+                .expectNext(movie, movie)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search by prefix escapes LIKE wildcards typed by the client")
+    public void search_EscapesWildcards_WhenSearchingByPrefix(){
+        BDDMockito.when(movieRepositoryMock.searchByTitleLike("the\\_lord\\%%", 0L, 21))
+                .thenReturn(Flux.just(movie));
+
+        StepVerifier.create(movieService.search("the_lord%", null, null, null))
+                .expectSubscription()
+                .expectNextMatches(page -> page.getContent().equals(Arrays.asList(movie)) && page.getNextCursor() == null)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search by contains wraps the query and returns the next cursor")
+    public void search_ReturnNextCursor_WhenSearchingByContains(){
+        BDDMockito.when(movieRepositoryMock.searchByTitleLike("%lord%", 5L, 2))
+                .thenReturn(Flux.just(movie, movie.withId(2L)));
+
+        StepVerifier.create(movieService.search("lord", "CONTAINS", 5L, 1))
+                .expectSubscription()
+                .expectNextMatches(page -> page.getContent().equals(Arrays.asList(movie)) && page.getNextCursor() == 1L)
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("search returns Mono error when the contains query is too short or the mode is unknown")
+    public void search_ReturnMonoError_WhenQueryIsInvalid(){
+        StepVerifier.create(movieService.search("lo", "contains", null, null))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        StepVerifier.create(movieService.search("lord", "regex", null, null))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never())
+                .searchByTitleLike(ArgumentMatchers.anyString(), ArgumentMatchers.anyLong(), ArgumentMatchers.anyInt());
     }
 
     @Test
@@ -120,6 +234,96 @@ class MovieServiceTest {
                 .verify();
     }
 
+    @Test
+    @DisplayName("findById reads the movie from the cache after the first call")
+    public void findById_ReturnCachedMovie_WhenCalledTwice() {
+        StepVerifier.create(movieService.findById(1L).then(movieService.findById(1L)))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("findById caches not found and keeps returning Mono error without going to the database")
+    public void findById_ReturnCachedNotFound_WhenCalledTwice() {
+        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(movieService.findById(1L).onErrorResume(e -> movieService.findById(1L)))
+                .expectSubscription()
+                .expectError(ResponseStatusException.class)
+                .verify();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(1)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("findById shares a single query between concurrent calls for the same id")
+    public void findById_SharesQuery_WhenCalledConcurrently() {
+        AtomicInteger queries = new AtomicInteger();
+        BDDMockito.when(movieRepositoryMock.findById(1L))
+                .thenReturn(Mono.defer(() -> {
+                    queries.incrementAndGet();
+                    return Mono.just(movie).delayElement(Duration.ofMillis(50));
+                }));
+
+        StepVerifier.create(Flux.merge(movieService.findById(1L), movieService.findById(1L), movieService.findById(1L)))
+                .expectSubscription()
+                .expectNext(movie, movie, movie)
+                .verifyComplete();
+
+        Assertions.assertEquals(1, queries.get());
+    }
+
+    @Test
+    @DisplayName("findById queries again once the in-flight query has failed")
+    public void findById_QueriesAgain_WhenInFlightQueryFailed() {
+        AtomicInteger queries = new AtomicInteger();
+        BDDMockito.when(movieRepositoryMock.findById(1L))
+                .thenReturn(Mono.defer(() -> queries.incrementAndGet() == 1
+                        ? Mono.<Movie>error(new IllegalStateException("connection reset"))
+                        : Mono.just(movie)));
+
+        StepVerifier.create(movieService.findById(1L).onErrorResume(e -> movieService.findById(1L)))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        Assertions.assertEquals(2, queries.get());
+    }
+
+    @Test
+    @DisplayName("update invalidates the cached movie")
+    public void update_InvalidatesCachedMovie_WhenSuccessful() {
+        StepVerifier.create(movieService.findById(1L)
+                .then(movieService.update(MovieCreator.createValidUpdateMovie()))
+                .then(movieService.findById(1L)))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(2)).findById(1L);
+    }
+
+    @Test
+    @DisplayName("findByTitle reads the movie from the cache until the title changes")
+    public void findByTitle_ReturnCachedMovie_UntilTitleChanges() {
+        BDDMockito.when(movieRepositoryMock.findMovieByTitle(movie.getTitle()))
+                .thenReturn(Mono.just(movie));
+
+        StepVerifier.create(movieService.findByTitle(movie.getTitle())
+                .then(movieService.findByTitle(movie.getTitle()))
+                .then(movieService.update(MovieCreator.createValidUpdateMovie()))
+                .then(movieService.findByTitle(movie.getTitle())))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(2)).findMovieByTitle(movie.getTitle());
+    }
+
     @Test
     @DisplayName("save creates a movie when successful")
     public void save_CreatesMovie_WhenSuccessful() {
@@ -131,6 +335,28 @@ class MovieServiceTest {
                 .verifyComplete();
     }
 
+    @Test
+    @DisplayName("save inserts a new movie even when the body has a version")
+    public void save_InsertsNewMovie_WhenBodyHasVersion() {
+        StepVerifier.create(movieService.save(MovieCreator.createMovieToSave().withVersion(3L)))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).save(MovieCreator.createMovieToSave());
+    }
+
+    @Test
+    @DisplayName("save inserts a new movie without the id sent in the body")
+    public void save_InsertsNewMovie_WhenBodyHasId() {
+        StepVerifier.create(movieService.save(MovieCreator.createValidMovie()))
+                .expectSubscription()
+                .expectNext(movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).save(MovieCreator.createMovieToSave());
+    }
+
     @Test
     @DisplayName("saveAll creates a list of movies when successful")
     public void saveAll_CreatesListOfMovies_WhenSuccessful() {
@@ -147,15 +373,50 @@ class MovieServiceTest {
     public void saveAll_ReturnsMonoError_WhenContainsInvalidTitle() {
         Movie movieToSave = MovieCreator.createMovieToSave();
 
-        BDDMockito.when(movieRepositoryMock
-                .saveAll(ArgumentMatchers.anyIterable()))
-                .thenReturn(Flux.just(movie, movie.withTitle("")));
-
         StepVerifier.create(movieService.saveAll(Arrays.asList(movieToSave, movieToSave.withTitle(""))))
                 .expectSubscription()
-                .expectNext(movie)
                 .expectError(ResponseStatusException.class)
                 .verify();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never()).insertAll(ArgumentMatchers.anyList());
+    }
+
+    @Test
+    @DisplayName("saveAll writes the movies in chunks of the configured size")
+    public void saveAll_WritesInChunks_WhenListIsBiggerThanChunkSize() {
+        Movie movieToSave = MovieCreator.createMovieToSave();
+        movieProperties.getBatch().setChunkSize(2);
+        BDDMockito.when(movieRepositoryMock.insertAll(ArgumentMatchers.anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Movie>>getArgument(0))
+                        .map(saved -> saved.withId(1L)));
+
+        StepVerifier.create(movieService.saveAll(Arrays.asList(movieToSave, movieToSave, movieToSave)))
+                .expectSubscription()
+                .expectNext(movie, movie, movie)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).insertAll(Arrays.asList(movieToSave, movieToSave));
+        BDDMockito.verify(movieRepositoryMock).insertAll(Arrays.asList(movieToSave));
+    }
+
+    @Test
+    @DisplayName("ingest writes each chunk and reports the rejected ones without stopping the stream")
+    public void ingest_ReportsEachChunk_WhenOneChunkContainsInvalidTitle() {
+        Movie movieToSave = MovieCreator.createMovieToSave();
+        movieProperties.getBatch().setChunkSize(2);
+        BDDMockito.when(movieRepositoryMock.insertAll(ArgumentMatchers.anyList()))
+                .thenAnswer(invocation -> Flux.fromIterable(invocation.<List<Movie>>getArgument(0))
+                        .map(saved -> saved.withId(1L)));
+
+        StepVerifier.create(movieService.ingest(Flux.just(movieToSave, movieToSave, movieToSave.withTitle(""), movieToSave, movieToSave)))
+                .expectSubscription()
+                .expectNextMatches(result -> result.getChunk() == 0 && result.getInserted() == 2 && result.getError() == null)
+                .expectNextMatches(result -> result.getChunk() == 1 && result.getInserted() == 0
+                        && "Invalid title at indexes [2]".equals(result.getError()))
+                .expectNextMatches(result -> result.getChunk() == 2 && result.getInserted() == 1 && result.getLastId() == 1L)
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(2)).insertAll(ArgumentMatchers.anyList());
     }
 
     @Test
@@ -164,13 +425,15 @@ class MovieServiceTest {
         StepVerifier.create(movieService.delete(1L))
                 .expectSubscription()
                 .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never()).findById(ArgumentMatchers.anyLong());
     }
 
     @Test
     @DisplayName("delete returns Mono error when movie does not exist")
     public void delete_ReturnMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
-                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.deleteMovieById(ArgumentMatchers.anyLong()))
+                .thenReturn(Mono.just(0));
 
         StepVerifier.create(movieService.delete(1L))
                 .expectSubscription()
@@ -179,17 +442,20 @@ class MovieServiceTest {
     }
 
     @Test
-    @DisplayName("update save updated a movie and returns empty mono when successful")
+    @DisplayName("update save updated a movie and returns it with the new version when successful")
     public void update_SaveUpdatedMovie_WhenSuccessful() {
         StepVerifier.create(movieService.update(MovieCreator.createValidMovie()))
                 .expectSubscription()
+                .expectNext(MovieCreator.createValidMovie().withVersion(1L))
                 .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never()).findById(ArgumentMatchers.anyLong());
     }
 
     @Test
     @DisplayName("update returns Mono error when movie does not exist")
     public void update_ReturnMonoError_WhenEmptyMonoIsReturned() {
-        BDDMockito.when(movieRepositoryMock.findById(ArgumentMatchers.anyLong()))
+        BDDMockito.when(movieRepositoryMock.updateTitle(ArgumentMatchers.anyLong(), ArgumentMatchers.anyString()))
                 .thenReturn(Mono.empty());
 
         StepVerifier.create(movieService.update(MovieCreator.createValidMovie()))
@@ -197,4 +463,97 @@ class MovieServiceTest {
                 .expectError(ResponseStatusException.class)
                 .verify();
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("update with version returns conflict when the movie was modified by another request")
+    public void update_ReturnConflict_WhenVersionIsOutdated() {
+        BDDMockito.when(movieRepositoryMock.updateTitleIfVersion(1L, movie.getTitle(), 2L))
+                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.existsById(1L))
+                .thenReturn(Mono.just(true));
+
+        StepVerifier.create(movieService.update(movie.withVersion(2L)))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.CONFLICT)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("update with version returns not found when the movie does not exist")
+    public void update_ReturnNotFound_WhenVersionedMovieDoesNotExist() {
+        BDDMockito.when(movieRepositoryMock.updateTitleIfVersion(1L, movie.getTitle(), 2L))
+                .thenReturn(Mono.empty());
+        BDDMockito.when(movieRepositoryMock.existsById(1L))
+                .thenReturn(Mono.just(false));
+
+        StepVerifier.create(movieService.update(movie.withVersion(2L)))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.NOT_FOUND)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("update with version issues a single conditional update when successful")
+    public void update_UpdatesConditionally_WhenVersionMatches() {
+        BDDMockito.when(movieRepositoryMock.updateTitleIfVersion(1L, movie.getTitle(), 2L))
+                .thenReturn(Mono.just(3L));
+
+        StepVerifier.create(movieService.update(movie.withVersion(2L)))
+                .expectSubscription()
+                .expectNext(movie.withVersion(3L))
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never()).existsById(ArgumentMatchers.anyLong());
+    }
+
+    @Test
+    @DisplayName("findAllById returns the movies in the order of the ids and marks the missing ones")
+    public void findAllById_ReturnMoviesInRequestOrder_WhenSomeAreMissing() {
+        Movie second = movie.withId(2L);
+        BDDMockito.when(movieRepositoryMock.findAllByIdIn(ArgumentMatchers.any(Long[].class)))
+                .thenReturn(Flux.just(movie, second));
+
+        StepVerifier.create(movieService.findAllById(Arrays.asList(2L, 9L, 1L, 2L)))
+                .expectSubscription()
+                .expectNext(MovieLookup.found(second), MovieLookup.missing(9L), MovieLookup.found(movie))
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock).findAllByIdIn(new Long[]{2L, 9L, 1L});
+    }
+
+    @Test
+    @DisplayName("findAllById only queries the ids that are not in the cache, in a single query")
+    public void findAllById_QueriesOnlyCacheMisses_WhenSomeAreCached() {
+        Movie second = movie.withId(2L);
+        BDDMockito.when(movieRepositoryMock.findAllByIdIn(ArgumentMatchers.any(Long[].class)))
+                .thenReturn(Flux.just(second));
+
+        StepVerifier.create(movieService.findById(1L).thenMany(movieService.findAllById(Arrays.asList(1L, 2L, 3L))))
+                .expectSubscription()
+                .expectNext(MovieLookup.found(movie), MovieLookup.found(second), MovieLookup.missing(3L))
+                .verifyComplete();
+        StepVerifier.create(movieService.findAllById(Arrays.asList(3L, 2L)))
+                .expectSubscription()
+                .expectNext(MovieLookup.missing(3L), MovieLookup.found(second))
+                .verifyComplete();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.times(1)).findAllByIdIn(ArgumentMatchers.any(Long[].class));
+        BDDMockito.verify(movieRepositoryMock).findAllByIdIn(new Long[]{2L, 3L});
+    }
+
+    @Test
+    @DisplayName("findAllById returns bad request when there are more ids than allowed")
+    public void findAllById_ReturnBadRequest_WhenThereAreTooManyIds() {
+        movieProperties.getLookup().setMaxIds(2);
+
+        StepVerifier.create(movieService.findAllById(Arrays.asList(1L, 2L, 3L)))
+                .expectSubscription()
+                .expectErrorMatches(e -> e instanceof StacklessResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.BAD_REQUEST)
+                .verify();
+
+        BDDMockito.verify(movieRepositoryMock, Mockito.never()).findAllByIdIn(ArgumentMatchers.any(Long[].class));
+    }
+}
@@ -0,0 +1,112 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.AuthProperties;
+import com.br.springwebflux.model.AccessToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import reactor.test.StepVerifier;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+class TokenServiceTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final Instant NOW = Instant.parse("2020-09-01T10:00:00Z");
+
+    private AuthProperties.Token properties;
+    private TokenService tokenService;
+
+    @BeforeEach
+    public void setUp() {
+        properties = new AuthProperties.Token();
+        properties.setSecret(SECRET);
+        properties.setTtl(Duration.ofMinutes(15));
+        tokenService = tokenServiceAt(NOW);
+    }
+
+    @Test
+    @DisplayName("verify returns the user and authorities carried by an issued token")
+    public void verify_ReturnsAuthentication_WhenTokenIsValid() {
+        AccessToken accessToken = tokenService.issue(admin());
+
+        Assertions.assertEquals("Bearer", accessToken.getTokenType());
+        Assertions.assertEquals(900, accessToken.getExpiresIn());
+        StepVerifier.create(tokenService.verify(accessToken.getAccessToken()))
+                .expectNextMatches(authentication -> authentication.isAuthenticated()
+                        && authentication.getName().equals("admin")
+                        && AuthorityUtils.authorityListToSet(authentication.getAuthorities())
+                        .equals(AuthorityUtils.authorityListToSet(AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"))))
+                .verifyComplete();
+    }
+
+    @Test
+    @DisplayName("verify rejects a token after it expires")
+    public void verify_ReturnsError_WhenTokenIsExpired() {
+        String token = tokenService.issue(admin()).getAccessToken();
+
+        StepVerifier.create(tokenServiceAt(NOW.plus(Duration.ofMinutes(15))).verify(token))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("verify rejects a token whose claims were changed")
+    public void verify_ReturnsError_WhenTokenIsTampered() {
+        String[] parts = tokenService.issue(admin()).getAccessToken().split("\\.");
+        String otherClaims = tokenService.issue(new UsernamePasswordAuthenticationToken("root", null,
+                AuthorityUtils.createAuthorityList("ROLE_ADMIN"))).getAccessToken().split("\\.")[1];
+
+        StepVerifier.create(tokenService.verify(parts[0] + "." + otherClaims + "." + parts[2]))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("verify rejects a token signed with another secret")
+    public void verify_ReturnsError_WhenSignedWithAnotherSecret() {
+        properties.setSecret("another-secret-another-secret-00");
+        String token = tokenServiceAt(NOW).issue(admin()).getAccessToken();
+        properties.setSecret(SECRET);
+
+        StepVerifier.create(tokenServiceAt(NOW).verify(token))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("verify rejects malformed tokens")
+    public void verify_ReturnsError_WhenTokenIsMalformed() {
+        StepVerifier.create(tokenService.verify("not-a-token"))
+                .expectError(BadCredentialsException.class)
+                .verify();
+        StepVerifier.create(tokenService.verify("a.b.%%%"))
+                .expectError(BadCredentialsException.class)
+                .verify();
+    }
+
+    @Test
+    @DisplayName("constructor refuses a short secret")
+    public void constructor_ThrowsIllegalStateException_WhenSecretIsTooShort() {
+        properties.setSecret("short");
+
+        Assertions.assertThrows(IllegalStateException.class, () -> tokenServiceAt(NOW));
+    }
+
+    private TokenService tokenServiceAt(Instant instant) {
+        return new TokenService(properties, new ObjectMapper(), Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private UsernamePasswordAuthenticationToken admin() {
+        return new UsernamePasswordAuthenticationToken("admin", null,
+                AuthorityUtils.createAuthorityList("ROLE_USER", "ROLE_ADMIN"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.br.springwebflux.service;
+
+import com.br.springwebflux.config.AuthProperties;
+import com.br.springwebflux.model.User;
+import com.br.springwebflux.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.BDDMockito;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+@ExtendWith(SpringExtension.class)
+class UserDetailsServiceImpTest {
+
+    @Mock
+    private UserRepository userRepositoryMock;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private UserDetailsServiceImp userDetailsService;
+
+    private final User user = new User(1L, "Admin", "admin", "{bcrypt}hash", "ROLE_USER,ROLE_ADMIN");
+
+    @BeforeEach
+    public void setUp() {
+        userDetailsService = new UserDetailsServiceImp(userRepositoryMock, new AuthProperties(), meterRegistry);
+
+        BDDMockito.when(userRepositoryMock.findByUsername("admin"))
+                .thenReturn(Mono.just(user));
+    }
+
+    @Test
+    @DisplayName("findByUsername queries the database only once for repeated logins")
+    public void findByUsername_ReturnCachedUser_WhenCalledTwice() {
+        StepVerifier.create(userDetailsService.findByUsername("admin").then(userDetailsService.findByUsername("admin")))
+                .expectSubscription()
+                .expectNext(user)
+                .verifyComplete();
+
+        BDDMockito.verify(userRepositoryMock, Mockito.times(1)).findByUsername("admin");
+        Assertions.assertEquals(1.0, meterRegistry.counter("users.repository.queries").count());
+    }
+
+    @Test
+    @DisplayName("findByUsername reloads the user after its credentials changed")
+    public void findByUsername_ReloadsUser_WhenCredentialsChanged() {
+        StepVerifier.create(userDetailsService.findByUsername("admin")
+                .doOnNext(found -> userDetailsService.onUserCredentialsChanged(new UserCredentialsChangedEvent(this, "admin")))
+                .then(userDetailsService.findByUsername("admin")))
+                .expectSubscription()
+                .expectNext(user)
+                .verifyComplete();
+
+        BDDMockito.verify(userRepositoryMock, Mockito.times(2)).findByUsername("admin");
+    }
+
+    @Test
+    @DisplayName("findByUsername returns empty Mono when the user does not exist")
+    public void findByUsername_ReturnEmptyMono_WhenUserDoesNotExist() {
+        BDDMockito.when(userRepositoryMock.findByUsername("nobody"))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(userDetailsService.findByUsername("nobody"))
+                .expectSubscription()
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,52 @@
+-- Consultas usadas por MovieRepository, incluído por title-search.sql para cada tamanho de tabela
+-- O driver R2DBC prepara o SQL do @Query com parâmetros ($1, $2, ...) e reaproveita o statement na conexão;
+-- depois de 5 execuções o Postgres pode passar a usar um plano genérico, que não conhece os valores.
+-- Por isso cada consulta roda 5 vezes antes do EXPLAIN, que mostra o plano da aplicação já aquecida.
+
+DEALLOCATE ALL;
+
+PREPARE find_movie_by_title(text) AS
+SELECT * FROM movie WHERE title = $1 ORDER BY id LIMIT 1;
+PREPARE search_by_title_ignoring_case(text, bigint, int) AS
+SELECT * FROM movie WHERE lower(title) = lower($1) AND id > $2 ORDER BY id LIMIT $3;
+PREPARE search_by_title_like(text, bigint, int) AS
+SELECT * FROM movie WHERE lower(title) LIKE lower($1) AND id > $2 ORDER BY id + 0 LIMIT $3;
+
+\o /dev/null
+EXECUTE find_movie_by_title('The Lord of the Rings');
+EXECUTE find_movie_by_title('The Lord of the Rings');
+EXECUTE find_movie_by_title('The Lord of the Rings');
+EXECUTE find_movie_by_title('The Lord of the Rings');
+EXECUTE find_movie_by_title('The Lord of the Rings');
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+EXECUTE search_by_title_like('the lord%', 0, 21);
+EXECUTE search_by_title_like('%two tower%', 0, 21);
+EXECUTE search_by_title_like('the lord%', 0, 21);
+EXECUTE search_by_title_like('%two tower%', 0, 21);
+EXECUTE search_by_title_like('the lord%', 0, 21);
+\o
+
+\echo '--- findMovieByTitle (exata)'
+EXPLAIN (ANALYZE, BUFFERS, SUMMARY)
+EXECUTE find_movie_by_title('The Lord of the Rings');
+
+\echo '--- searchByTitleIgnoringCase (exact)'
+EXPLAIN (ANALYZE, BUFFERS, SUMMARY)
+EXECUTE search_by_title_ignoring_case('the lord of the rings', 0, 21);
+
+\echo '--- searchByTitleLike (prefix)'
+EXPLAIN (ANALYZE, BUFFERS, SUMMARY)
+EXECUTE search_by_title_like('the lord%', 0, 21);
+
+\echo '--- searchByTitleLike (contains)'
+EXPLAIN (ANALYZE, BUFFERS, SUMMARY)
+EXECUTE search_by_title_like('%two tower%', 0, 21);
+
+-- padrão que casa com 1/7 da tabela: fora do que fica constante, cresce com a quantidade de linhas que casam
+\echo '--- searchByTitleLike (contains, 1/7 da tabela)'
+EXPLAIN (ANALYZE, BUFFERS, SUMMARY)
+EXECUTE search_by_title_like('%part 3%', 0, 21);
@@ -0,0 +1,32 @@
+-- Benchmark da busca por título: mede as mesmas consultas do MovieRepository
+-- com a tabela crescendo de 10 mil para 1 milhão de linhas.
+-- Rodar num banco descartável (o script apaga a tabela movie):
+--   psql -h localhost -U postgres -d webflux_bench -f src/test/resources/benchmark/title-search.sql
+-- As consultas rodam com parâmetros, como o driver manda (ver title-search-queries.sql).
+-- Com os índices de db/schema.sql as buscas seletivas ficam praticamente iguais em todos os tamanhos;
+-- sem eles aparece Seq Scan e o tempo cresce com a tabela. Resultado medido em title-search-results.txt.
+
+\set ON_ERROR_STOP on
+\timing off
+
+DROP TABLE IF EXISTS movie;
+\ir ../../../main/resources/db/schema.sql
+
+\echo '==================== 10 000 linhas ===================='
+INSERT INTO movie (title)
+SELECT 'movie ' || md5(i::text) || ' part ' || (i % 7) FROM generate_series(1, 10000) AS i;
+INSERT INTO movie (title) VALUES ('The Lord of the Rings'), ('The Lord of the Rings: The Two Towers');
+ANALYZE movie;
+\ir title-search-queries.sql
+
+\echo '==================== 100 000 linhas ===================='
+INSERT INTO movie (title)
+SELECT 'movie ' || md5(i::text) || ' part ' || (i % 7) FROM generate_series(10001, 100000) AS i;
+ANALYZE movie;
+\ir title-search-queries.sql
+
+\echo '==================== 1 000 000 linhas ===================='
+INSERT INTO movie (title)
+SELECT 'movie ' || md5(i::text) || ' part ' || (i % 7) FROM generate_series(100001, 1000000) AS i;
+ANALYZE movie;
+\ir title-search-queries.sql